@@ -1,7 +1,37 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
@@ -15,14 +45,64 @@ class LightEmAll extends World {
   ArrayList<ArrayList<GamePiece>> board;
   // a list of all GamePieces in this game
   ArrayList<GamePiece> nodes;
-  // a mock HashMap to represent Edges between GamePieces
-  HashMap<GamePiece, GamePiece> representatives;
-  // a list of all possible Edges between GamePieces and their neighbors
-  ArrayList<Edge> worklist;
-  // to store the Minimum Spanning Tree
-  ArrayList<Edge> edgesInTree;
-  // a list of all powered GamePieces
-  ArrayList<GamePiece> powered;
+  // the wires, connections and powerStation of every cell; GamePieces are views over it
+  BoardStore store;
+  // the wires and connections of every cell as row-major bitplanes
+  BitBoard bits;
+  // are GamePieces materialized in board and nodes? They hold no state of their own, but
+  // a game without them saves an object per cell on large boards
+  boolean views;
+  // a union-find over cell indices to track which GamePieces share a tree, made by
+  // genEdges(); null until then
+  DisjointSet representatives;
+  // packed Edges between GamePieces and the Minimum Spanning Tree built from them, made by
+  // genEdges() only for the games that need them; null until then
+  KruskalEngine kruskal;
+  // the directions each GamePiece is wired to its neighbors, indexed like nodes
+  int[] conn;
+  // a reusable BFS to find the deepest GamePieces of the board
+  DiameterEngine diameter;
+  // a reusable BFS to carry power from the powerStation
+  PowerEngine power;
+  // the distances between any two cells, made on first use and rebuilt when a query finds
+  // the connections changed
+  DistanceOracle oracle;
+  // the longest path through the GamePieces connected to powerStation, made on first use
+  // when liveRadius is set
+  DiameterTracker live;
+  // every GamePiece image at the current pieceSize
+  TileCache tiles;
+  // the scene drawn so far and the cells that changed since
+  SceneCache frame;
+  // the number of GamePieces whose connections or powerStation flag were refreshed
+  // by the last event
+  int touched;
+  // the indices of all powered GamePieces
+  IndexSet powered;
+  // the last 2^20 rotations and powerStation moves, to take back and make again
+  MoveLog moves;
+  // are clicks and key presses queued and made together on the next tick, powering up once,
+  // instead of one by one as they come?
+  boolean batchInput;
+  // the clicks and key presses queued since the last tick, packed like the moves of a MoveLog
+  // with the cell of a key press left as 0
+  IndexList inputs;
+  // does radius follow the longest path through the GamePieces connected to powerStation
+  // after every rotation, instead of keeping the one found when the board was made? With a
+  // powerBudget, the path is searched for again within the budget of the next ticks, and
+  // radius keeps its old value until the search finishes
+  boolean liveRadius;
+  // nanoseconds of each tick spent carrying power through the board after a change, or 0
+  // to carry it all the way as the change is made
+  long powerBudget;
+  // does powerUp() flood over the connection planes of bits instead of a queue of cells?
+  // Both give the same distances and power
+  boolean bitFlood;
+  // the listeners told when a move solves the puzzle
+  ArrayList<ICompletionListener> listeners;
+  // was the puzzle solved after the last move, and has a move ever solved it?
+  boolean solved;
+  boolean completed;
   // dimensions of the board and GamePieces
   int width;
   int height;
@@ -32,12 +112,15 @@ class LightEmAll extends World {
   int powerCol;
   // to store the effective radius of powerStation
   int radius;
-  // to store the game mode. Can be one of "MANUAL", "FRACTAL", "KRUSKAL", "EMPTY"
+  // to store the game mode. Can be one of "MANUAL", "FRACTAL", "KRUSKAL", "BORUVKA", "WILSON",
+  // "PRIM", "EMPTY"
   String mode;
   // is the board going to be scrambled?
   boolean scramble;
   // a random object for testing
   Random rand;
+  // the seed rand was made from, or 0 when the game was handed a Random of its own
+  long seed;
 
   // Constructor to start a LightEmAll game. Default mode is "KRUSKAL"
   LightEmAll(int width, int height) {
@@ -56,161 +139,455 @@ class LightEmAll extends World {
 
   // Constructor with a specified random object for testing
   LightEmAll(int width, int height, String mode, boolean scramble, Random rand) {
+    this(width, height, mode, scramble, rand, true);
+  }
+
+  // Constructor with a flag to materialize GamePieces; a game without them still plays,
+  // but board and nodes stay empty
+  LightEmAll(int width, int height, String mode, boolean scramble, Random rand, boolean views) {
+    this.build(width, height, mode, scramble, rand, views);
+    this.init();
+  }
+
+  // Constructor with the seed of the random object, so that the game can be generated again
+  LightEmAll(int width, int height, String mode, boolean scramble, long seed, boolean views) {
+    this(width, height, mode, scramble, new Random(seed), views);
+    this.seed = seed;
+  }
+
+  // Constructor to resume a saved game; its wires, powerStation and radius are taken from
+  // the snapshot instead of being generated and searched for
+  LightEmAll(BoardSnapshot snapshot, boolean views) {
+    this.build(snapshot.width, snapshot.height, snapshot.mode, false,
+            new Random(snapshot.seed), views);
+    this.seed = snapshot.seed;
+    this.restore(snapshot);
+  }
+
+  // EFFECT: allocates the board and engines of a game, without any wires yet
+  void build(int width, int height, String mode, boolean scramble, Random rand, boolean views) {
     this.mode = mode;
     this.board = new ArrayList<>();
     this.nodes = new ArrayList<>();
-    this.representatives = new HashMap<>();
-    this.worklist = new ArrayList<>();
-    this.edgesInTree = new ArrayList<>();
+    this.store = new BoardStore(width, height);
+    this.bits = new BitBoard(width, height);
+    this.views = views;
+    this.representatives = null;
+    this.kruskal = null;
+    this.conn = this.store.conn;
+    this.diameter = new DiameterEngine(width, height);
+    this.power = this.store.power;
+    this.powered = this.power.powered;
+    this.moves = new MoveLog(1 << 20);
+    this.batchInput = false;
+    this.inputs = new IndexList(16);
+    this.liveRadius = false;
+    this.powerBudget = 0;
+    this.bitFlood = false;
+    this.listeners = new ArrayList<>();
+    this.completed = false;
     this.width = width;
     this.height = height;
     this.powerRow = 0;
     this.powerCol = 0;
     this.pieceSize = 40;
+    this.tiles = new TileCache(this.pieceSize);
+    this.frame = new SceneCache(width * height);
     this.scramble = scramble;
     this.rand = rand;
-    this.init();
+    this.seed = 0;
   }
 
   // EFFECT: calls helpers to initialize a LightEmAll game
   void init() {
     this.genBoard();
-    this.connectNeighbors();
+    this.checkInterrupted();
     this.genWires();
+    this.checkInterrupted();
     this.updateConnections();
     this.findRadius();
-    this.powered = this.board.get(powerRow).get(powerCol).powerUp(this.radius, 0,
-            new ArrayList<>(), new ArrayList<>());
+    this.powerUp();
+    this.solved = this.isSolved();
+  }
+
+  // EFFECT: throws a CancellationException if the thread generating this game was
+  // interrupted, as a PuzzlePool does to the games it drops, so that they stop early
+  void checkInterrupted() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("interrupted while generating a game");
+    }
+  }
+
+  // EFFECT: initializes a LightEmAll game from the given snapshot, which must have the
+  // dimensions of this game
+  void restore(BoardSnapshot snapshot) {
+    this.genBoard();
+    snapshot.unpack(this.store.wires);
+    this.powerCol = snapshot.powerCol;
+    this.powerRow = snapshot.powerRow;
+    this.updateConnections();
+    this.radius = snapshot.radius;
+    this.powerUp();
+    this.solved = this.isSolved();
+  }
+
+  // is every GamePiece powered and joined to the others by a single tree of wires?
+  // Both counts are kept up to date as the board changes, so this takes constant time
+  boolean isSolved() {
+    return this.powered.size() == this.store.cells
+            && this.store.joined() == this.store.cells - 1;
+  }
+
+  // to return the number of wires on the shortest path between the GamePieces at the given
+  // cells, or Integer.MAX_VALUE if no wires join them
+  int distanceBetween(int a, int b) {
+    if (this.oracle == null) {
+      this.oracle = new DistanceOracle(this.width, this.height);
+    }
+    if (this.oracle.version != this.store.version) {
+      this.oracle.build(this.conn, this.store.version);
+    }
+    return this.oracle.dist(this.conn, a, b);
+  }
+
+  // to return the number of wires between powerStation and the GamePiece at the given
+  // column and row, or Integer.MAX_VALUE if no wires join them
+  int distanceFromStation(int col, int row) {
+    return this.distanceBetween(this.store.station, col * this.height + row);
+  }
+
+  // EFFECT: adds a listener to tell when a move solves the puzzle
+  void addCompletionListener(ICompletionListener listener) {
+    this.listeners.add(listener);
+  }
+
+  // EFFECT: tells every listener that the puzzle is solved, if the last move solved it for
+  // the first time
+  void checkSolved() {
+    boolean now = this.isSolved();
+    if (now && !this.solved && !this.completed) {
+      this.completed = true;
+      for (ICompletionListener listener : this.listeners) {
+        listener.onSolved(this);
+      }
+    }
+    this.solved = now;
+  }
+
+  // EFFECT: saves this game to the given file, replacing whatever was there
+  void save(Path path) throws IOException {
+    BoardSnapshot.save(this, path);
   }
 
   // to draw the graphical interface of a LightEmAll game
+  // Every GamePiece is kept drawn in one raster between frames: only the cells marked in
+  // frame are patched into it, and the scene placing it is made again only when
+  // powerStation moves
   @Override
   public WorldScene makeScene() {
-    WorldScene ws = new WorldScene(this.width * this.pieceSize, this.height * this.pieceSize);
-    for (int i = 0; i < this.width; i++) {
-      for (int j = 0; j < this.height; j++) {
-        if (i == this.powerCol && j == this.powerRow) {
-          ws.placeImageXY(this.board.get(i).get(j).draw(this.pieceSize, this.radius),
-                  this.pieceSize / 2 + this.pieceSize * i, this.pieceSize / 2 + this.pieceSize * j);
-          ws.placeImageXY(
-                  new OverlayImage(new StarImage(16, 7, OutlineMode.OUTLINE, Color.ORANGE),
-                          new StarImage(16, 7, OutlineMode.SOLID, Color.CYAN)),
-                  this.pieceSize / 2 + this.pieceSize * i, this.pieceSize / 2 + this.pieceSize * j);
-        }
-        else {
-          ws.placeImageXY(this.board.get(i).get(j).draw(this.pieceSize, this.radius),
-                  this.pieceSize / 2 + this.pieceSize * i, this.pieceSize / 2 + this.pieceSize * j);
-        }
+    if (this.tiles.pieceSize != this.pieceSize) {
+      this.tiles.invalidate(this.pieceSize);
+      this.frame.invalidate();
+    }
+    this.frame.painted = 0;
+    if (this.frame.isStale()) {
+      this.frame.rebuild(this.width * this.pieceSize, this.height * this.pieceSize);
+      for (int cell = 0; cell < this.store.cells; cell++) {
+        this.paint(cell, true);
       }
     }
-    return ws;
+    else {
+      for (int i = 0; i < this.frame.dirty.size(); i++) {
+        this.paint(this.frame.dirty.get(i), false);
+      }
+    }
+    this.frame.dirty.clear();
+    int station = this.store.station;
+    return this.frame.compose(this.tiles.station(), station,
+            this.pieceSize / 2 + this.pieceSize * (station / this.height),
+            this.pieceSize / 2 + this.pieceSize * (station % this.height));
+  }
+
+  // EFFECT: patches the GamePiece at the given cell into the kept raster, unless its image
+  // is the one already there
+  void paint(int cell, boolean force) {
+    int mask = this.store.wires[cell];
+    int bucket = GamePiece.bucketOf(this.power.distOf(cell), this.radius);
+    int key = bucket * 16 + mask;
+    if (force || key != this.frame.drawn[cell]) {
+      this.tiles.paint(this.frame.raster, this.pieceSize * (cell / this.height),
+              this.pieceSize * (cell % this.height), mask, bucket);
+      this.frame.drawn[cell] = key;
+      this.frame.painted = this.frame.painted + 1;
+    }
+  }
+
+  // EFFECT: changes the size GamePieces are drawn at, dropping every cached image
+  void setPieceSize(int size) {
+    this.pieceSize = size;
+    this.tiles.invalidate(size);
+    this.frame.invalidate();
   }
 
   // to interact by rotating a GamePiece depending on where the click is
+  // Clicks outside of the board are ignored
   public void onMouseClicked(Posn pos, String key) {
-    this.powerDown();
-    this.powered = new ArrayList<>();
-    if (key.equals("LeftButton") || key.equals("RightButton")) {
-      GamePiece current = this.board.get(Math.floorDiv(pos.x,
-              this.pieceSize)).get(Math.floorDiv(pos.y, this.pieceSize));
-      // GamePiece.rotate receives the key to specify direction
-      current.rotate(key);
+    int col = Math.floorDiv(pos.x, this.pieceSize);
+    int row = Math.floorDiv(pos.y, this.pieceSize);
+    if ((key.equals("LeftButton") || key.equals("RightButton"))
+            && col >= 0 && col < this.width && row >= 0 && row < this.height) {
+      int cell = col * this.height + row;
+      if (this.batchInput) {
+        this.inputs.add(MoveLog.pack(cell, MoveLog.opFor(key)));
+      }
+      else {
+        this.turn(cell, key);
+        this.moves.record(MoveLog.pack(cell, MoveLog.opFor(key)));
+        this.checkSolved();
+      }
     }
-    this.updateConnections();
-    this.powered = this.board.get(powerCol).get(powerRow).powerUp(this.radius, 0,
-            new ArrayList<>(), new ArrayList<>());
+  }
+
+  // EFFECT: makes every click and key press queued since the last tick, then carries the
+  // search for the longest path and power through the board for up to powerBudget
+  // nanoseconds, if they are under way
+  @Override
+  public void onTick() {
+    if (this.inputs.size() > 0) {
+      this.makeInputs();
+    }
+    long deadline = this.powerBudget > 0 ? System.nanoTime() + this.powerBudget
+            : Long.MAX_VALUE;
+    if (this.live != null && this.live.step > 0) {
+      this.carryRadius(deadline);
+    }
+    if (!this.power.settled()) {
+      this.carryPower(deadline);
+    }
+  }
+
+  // EFFECT: makes every click and key press queued since the last tick, then powers the
+  // board up once
+  void makeInputs() {
+    this.touched = 0;
+    for (int i = 0; i < this.inputs.size(); i++) {
+      int input = this.inputs.get(i);
+      int op = MoveLog.opOf(input);
+      if (op == MoveLog.UNDO && this.moves.canUndo()) {
+        int move = this.moves.undo();
+        this.shift(MoveLog.cellOf(move), MoveLog.INVERSE[MoveLog.opOf(move)]);
+      }
+      else if (op == MoveLog.REDO && this.moves.canRedo()) {
+        int move = this.moves.redo();
+        this.shift(MoveLog.cellOf(move), MoveLog.opOf(move));
+      }
+      else if (op != MoveLog.UNDO && op != MoveLog.REDO) {
+        this.shiftAndLog(MoveLog.cellOf(input), op);
+      }
+    }
+    this.inputs.clear();
+    this.followRadius();
+    this.repowerAll();
+    this.checkSolved();
+  }
+
+  // EFFECT: rotates the GamePiece at the given cell as the given mouse button does, then
+  // refreshes and repowers only the GamePieces it affects
+  void turn(int cell, String key) {
+    int oldMask = this.conn[cell];
+    // power is repaired around the rotation only if the last flood is finished and is not
+    // sliced, and so is the longest path, if it is known for the board as it was before
+    boolean sliced = this.powerBudget > 0 || this.power.flooding;
+    boolean follow = !sliced && this.liveRadius && this.live != null
+            && this.live.version == this.store.version;
+    if (follow) {
+      this.live.remember(this.conn, cell);
+    }
+    this.touched = 0;
+    // BoardStore.rotate receives the key to specify direction
+    this.store.rotate(cell, key);
+    this.frame.mark(cell);
+    this.refreshAround(cell);
+    if (sliced) {
+      this.followRadius();
+      this.repowerAll();
+      return;
+    }
+    this.repower(cell, oldMask);
+    if (follow) {
+      this.live.rotated(this.conn, this.power, this.store.station, this.store.version);
+    }
+    if (this.followRadius()) {
+      this.repowerAll();
+    }
+  }
 
+  // to return whether radius changed to follow the longest path through the GamePieces
+  // connected to powerStation, if liveRadius is set
+  // EFFECT: searches for the longest path if it is not known for the current connections.
+  // With a powerBudget, the search is only begun, for onTick() to carry on
+  boolean followRadius() {
+    if (!this.liveRadius) {
+      return false;
+    }
+    if (this.live == null) {
+      this.live = new DiameterTracker(this.width, this.height);
+    }
+    if (this.live.version != this.store.version && this.powerBudget > 0) {
+      if (this.live.step == 0 || this.live.building != this.store.version) {
+        this.live.begin(this.store.station, this.store.version);
+      }
+      return false;
+    }
+    if (this.live.version != this.store.version) {
+      this.live.rebuild(this.conn, this.store.station, this.store.version);
+    }
+    int old = this.radius;
+    this.radius = this.live.radius();
+    return this.radius != old;
   }
 
   // to move powerStation depending on which key is pressed and its surroundings
+  // "z" takes back the last move and "y" makes it again
   public void onKeyEvent(String str) {
-    this.powerDown();
-    this.powered = new ArrayList<>();
-    if (str.equals("up") && this.board.get(this.powerCol).get(this.powerRow).top) {
-      this.powerRow = this.powerRow - 1;
+    int from = this.store.station;
+    if (this.batchInput) {
+      int op = MoveLog.opFor(str);
+      if (op > MoveLog.TURN_RIGHT) {
+        this.inputs.add(MoveLog.pack(0, op));
+      }
     }
-    else if (str.equals("right") && this.board.get(this.powerCol).get(this.powerRow).rig) {
-      this.powerCol = this.powerCol + 1;
+    else if (str.equals("z")) {
+      this.undo();
     }
-    else if (str.equals("down") && this.board.get(this.powerCol).get(this.powerRow).bot) {
-      this.powerRow = this.powerRow + 1;
+    else if (str.equals("y")) {
+      this.redo();
     }
-    else if (str.equals("left") && this.board.get(this.powerCol).get(this.powerRow).lef) {
-      this.powerCol = this.powerCol - 1;
+    else {
+      this.step(str);
+      if (this.store.station != from) {
+        this.moves.record(MoveLog.pack(from, MoveLog.opFor(str)));
+      }
+      this.checkSolved();
+    }
+  }
+
+  // EFFECT: moves powerStation one GamePiece in the direction of the given arrow key, if a
+  // wire joins them, then repowers the board. On a tree of wires every distance changes by
+  // one, so they are shifted in bulk instead of flooded again
+  void step(String str) {
+    this.touched = 0;
+    int op = MoveLog.opFor(str);
+    int from = this.store.station;
+    if (op < MoveLog.MOVE_UP || op > MoveLog.MOVE_LEFT
+            || (this.conn[from] & MoveLog.DIRECTIONS[op]) == 0) {
+      return;
+    }
+    int to = this.store.neighbor(from, MoveLog.DIRECTIONS[op]);
+    boolean sliced = this.powerBudget > 0 || this.power.flooding;
+    if (!sliced && this.power.reroot(this.conn, from, to)) {
+      this.moveStation(to / this.height, to % this.height);
+      this.syncShift();
+    }
+    else {
+      this.moveStation(to / this.height, to % this.height);
+      this.repowerAll();
     }
-    this.updateConnections();
-    this.powered = this.board.get(powerCol).get(powerRow).powerUp(this.radius, 0,
-            new ArrayList<>(), new ArrayList<>());
     // this.nodeFurthestFrom(this.board.get(this.powerCol).get(this.powerRow));
   }
 
-  // EFFECT: establishes relations between a certain cell and its adjacent cells
-  void connectNeighbors() {
-    for (int i = 0; i < this.width; i++) {
-      for (int j = 0; j < this.height; j++) {
-        // target node
-        GamePiece target = this.board.get(i).get(j);
-        // top left corner
-        if (i == 0 && j == 0) {
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-        }
-        // top right corner
-        else if (i == this.width - 1 && j == 0) {
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-        }
-        // top row
-        else if (j == 0 && i != 0 && i != this.width - 1) {
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-        }
-        // left column
-        else if (i == 0 && j != 0 && j != this.height - 1) {
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-        }
-        // right column
-        else if (i == this.width - 1 && j != 0 && j != this.height - 1) {
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-        }
-        // bottom left corner
-        else if (i == 0 && j == this.height - 1) {
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-        }
-        // bottom right corner
-        else if (i == this.width - 1 && j == this.height - 1) {
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-        }
-        // bottom row
-        else if (j == this.height - 1 && i != 0 && i != this.width - 1) {
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-        }
-        // center pieces
-        else {
-          target.addNeighbor("top", this.board.get(i).get(j - 1));
-          target.addNeighbor("bottom", this.board.get(i).get(j + 1));
-          target.addNeighbor("right", this.board.get(i + 1).get(j));
-          target.addNeighbor("left", this.board.get(i - 1).get(j));
-        }
+  // EFFECT: marks the cells whose image changed with the distances shifted by the last
+  // reroot()
+  void syncShift() {
+    for (int i = 0; i < this.power.changed.size(); i++) {
+      this.frame.mark(this.power.changed.get(i));
+    }
+    this.powered = this.power.powered;
+  }
+
+  // EFFECT: takes back the newest move that is not taken back yet, if there is one
+  void undo() {
+    if (this.moves.canUndo()) {
+      int move = this.moves.undo();
+      this.apply(MoveLog.cellOf(move), MoveLog.INVERSE[MoveLog.opOf(move)]);
+      this.checkSolved();
+    }
+  }
+
+  // EFFECT: makes the oldest move taken back again, if there is one
+  void redo() {
+    if (this.moves.canRedo()) {
+      int move = this.moves.redo();
+      this.apply(MoveLog.cellOf(move), MoveLog.opOf(move));
+      this.checkSolved();
+    }
+  }
+
+  // EFFECT: rotates the GamePiece at the given cell or moves powerStation, as the given op
+  // does, without logging it
+  void apply(int cell, int op) {
+    if (op == MoveLog.TURN_LEFT || op == MoveLog.TURN_RIGHT) {
+      this.turn(cell, MoveLog.KEYS[op]);
+    }
+    else {
+      this.step(MoveLog.KEYS[op]);
+    }
+  }
+
+  // EFFECT: makes every done move of the given log, which is not this game's own, in order,
+  // logging them too. Connections are refreshed after each move, but power only once at the end
+  void replay(MoveLog log) {
+    this.touched = 0;
+    for (int i = 0; i < log.done; i++) {
+      int move = log.get(i);
+      this.shiftAndLog(MoveLog.cellOf(move), MoveLog.opOf(move));
+    }
+    this.followRadius();
+    this.repowerAll();
+    this.checkSolved();
+  }
+
+  // EFFECT: makes the given move as shift() does, logging it if it changed anything
+  void shiftAndLog(int cell, int op) {
+    int from = this.store.station;
+    if (this.shift(cell, op)) {
+      if (op == MoveLog.TURN_LEFT || op == MoveLog.TURN_RIGHT) {
+        this.moves.record(MoveLog.pack(cell, op));
+      }
+      else {
+        this.moves.record(MoveLog.pack(from, op));
       }
     }
   }
 
-  // EFFECT: generates the LightEmAll grid
+  // to return whether the given move changed the board: a rotation of the GamePiece at the
+  // given cell, or a move of powerStation from wherever it is, if a wire allows it
+  // EFFECT: makes the move and refreshes connections, but leaves power to the caller
+  boolean shift(int cell, int op) {
+    if (op == MoveLog.TURN_LEFT || op == MoveLog.TURN_RIGHT) {
+      this.store.rotate(cell, MoveLog.KEYS[op]);
+      this.frame.mark(cell);
+      this.refreshAround(cell);
+      return true;
+    }
+    if ((this.conn[this.store.station] & MoveLog.DIRECTIONS[op]) != 0) {
+      int to = this.store.neighbor(this.store.station, MoveLog.DIRECTIONS[op]);
+      this.moveStation(to / this.height, to % this.height);
+      return true;
+    }
+    return false;
+  }
+
+  // EFFECT: generates the LightEmAll grid of GamePiece views over store, unless they are
+  // turned off
   void genBoard() {
+    if (!this.views) {
+      return;
+    }
     for (int i = 0; i < this.width; i++) {
       this.board.add(new ArrayList<>());
       for (int j = 0; j < this.height; j++) {
-        GamePiece gp = new GamePiece(i, j);
+        GamePiece gp = new GamePiece(i, j, this.store);
         this.board.get(i).add(gp);
         this.nodes.add(gp);
       }
@@ -228,6 +605,15 @@ class LightEmAll extends World {
     if (this.mode.equals("KRUSKAL")) {
       this.kruskalWires();
     }
+    if (this.mode.equals("BORUVKA")) {
+      this.boruvkaWires();
+    }
+    if (this.mode.equals("WILSON")) {
+      this.wilsonWires();
+    }
+    if (this.mode.equals("PRIM")) {
+      this.primWires();
+    }
     if (this.mode.equals("EMPTY")) {
       return; // This mode is only for testing
     }
@@ -239,268 +625,496 @@ class LightEmAll extends World {
       for (int j = 0; j < this.height; j++) {
         // top left corner
         if (i == 0 && j == 0) {
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.BOTTOM);
         }
         // top row
         else if (i > 0 && j == 0 && i < this.width - 1) {
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.BOTTOM);
         }
         // top right corner
         else if (i == this.width - 1 && j == 0) {
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.BOTTOM);
         }
         // left column
         else if (i == 0 && j != 0 && j != this.height - 1) {
-          this.board.get(i).get(j).wireTop = true;
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.TOP);
+          this.store.wire(i, j, GamePiece.BOTTOM);
           if (j == 4) {
-            this.board.get(i).get(j).wireRight = true;
+            this.store.wire(i, j, GamePiece.RIGHT);
           }
         }
         // right column
         else if (i == this.width - 1 && j != 0 && j != height - 1) {
-          this.board.get(i).get(j).wireTop = true;
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.TOP);
+          this.store.wire(i, j, GamePiece.BOTTOM);
           if (j == 4) {
-            this.board.get(i).get(j).wireLeft = true;
+            this.store.wire(i, j, GamePiece.LEFT);
           }
         }
         // bottom left corner
         else if (i == 0 && j == this.height - 1) {
-          this.board.get(i).get(j).wireTop = true;
+          this.store.wire(i, j, GamePiece.TOP);
         }
         // bottom row
         else if (i != 0 && i != this.width - 1 && j == this.height - 1) {
-          this.board.get(i).get(j).wireTop = true;
+          this.store.wire(i, j, GamePiece.TOP);
         }
         // bottom right corner
         else if (i == this.width - 1 && j == this.height - 1) {
-          this.board.get(i).get(j).wireTop = true;
+          this.store.wire(i, j, GamePiece.TOP);
         }
         // middle row
         else if (j == 4 && i != 0 && i != this.width - 1) {
-          this.board.get(i).get(j).wireLeft = true;
-          this.board.get(i).get(j).wireTop = true;
-          this.board.get(i).get(j).wireBot = true;
-          this.board.get(i).get(j).wireRight = true;
+          this.store.wire(i, j, GamePiece.LEFT);
+          this.store.wire(i, j, GamePiece.TOP);
+          this.store.wire(i, j, GamePiece.BOTTOM);
+          this.store.wire(i, j, GamePiece.RIGHT);
         }
         // every other cell that is not along a border
         else {
-          this.board.get(i).get(j).wireTop = true;
-          this.board.get(i).get(j).wireBot = true;
+          this.store.wire(i, j, GamePiece.TOP);
+          this.store.wire(i, j, GamePiece.BOTTOM);
         }
       }
     }
   }
 
   // EFFECT: generates a fractal-like pattern that works for any dimensions
+  // Every rectangle paints its border and splits into quadrants. Rectangles wait on an
+  // explicit stack instead of the call stack, and since painting only ever adds wires, a
+  // rectangle reached again through another quadrant is skipped
   void fractalWires(int x1, int x2, int y1, int y2) {
-    for (int k = x1; k <= x2; k++) {
-      for (int h = y1; h <= y2; h++) {
-        // top left corner
-        if (k == x1 && h == y1) {
-          this.board.get(k).get(h).wireBot = true;
-        }
-        // top right corner
-        else if (k == x2 && h == y1) {
-          this.board.get(k).get(h).wireBot = true;
-        }
-        // bottom left corner
-        else if (k == x1 && h == y2) {
-          this.board.get(k).get(h).wireRight = true;
-          this.board.get(k).get(h).wireTop = true;
-        }
-        // bottom right corner
-        else if (k == x2 && h == y2) {
-          this.board.get(k).get(h).wireLeft = true;
-          this.board.get(k).get(h).wireTop = true;
-        }
-        // left column
-        else if (h != y1 && h != y2 && k == x1) {
-          this.board.get(k).get(h).wireTop = true;
-          this.board.get(k).get(h).wireBot = true;
-        }
-        // right column
-        else if (h != y1 && h != y2 && k == x2) {
-          this.board.get(k).get(h).wireTop = true;
-          this.board.get(k).get(h).wireBot = true;
-        }
-        // bottom row
-        else if (k != x1 && k != x2 && h == y2) {
-          this.board.get(k).get(h).wireLeft = true;
-          this.board.get(k).get(h).wireRight = true;
-        }
+    IndexList stack = new IndexList(64);
+    LongSet seen = new LongSet(64);
+    this.pushRect(stack, x1, x2, y1, y2);
+    while (stack.size() > 0) {
+      int bottom = stack.pop();
+      int top = stack.pop();
+      int right = stack.pop();
+      int left = stack.pop();
+      if (seen.add(((long) left << 48) | ((long) right << 32) | ((long) top << 16) | bottom)) {
+        this.paintRect(left, right, top, bottom);
+        this.splitRect(stack, left, right, top, bottom);
       }
     }
+  }
+
+  // EFFECT: pushes the given rectangle onto the stack of rectangles left to paint
+  void pushRect(IndexList stack, int x1, int x2, int y1, int y2) {
+    stack.add(x1);
+    stack.add(x2);
+    stack.add(y1);
+    stack.add(y2);
+  }
+
+  // EFFECT: adds the wires of the border of the given rectangle; the cells inside of it and
+  // the top row between its corners get none, and an empty rectangle gets nothing
+  void paintRect(int x1, int x2, int y1, int y2) {
+    if (x1 > x2 || y1 > y2) {
+      return;
+    }
+    for (int h = y1; h <= y2; h++) {
+      this.paintFractal(x1, h, x1, x2, y1, y2);
+      this.paintFractal(x2, h, x1, x2, y1, y2);
+    }
+    for (int k = x1 + 1; k < x2; k++) {
+      this.paintFractal(k, y1, x1, x2, y1, y2);
+      this.paintFractal(k, y2, x1, x2, y1, y2);
+    }
+  }
+
+  // EFFECT: adds the wires of the cell at column k and row h of the given rectangle
+  void paintFractal(int k, int h, int x1, int x2, int y1, int y2) {
+    // top left corner
+    if (k == x1 && h == y1) {
+      this.store.wire(k, h, GamePiece.BOTTOM);
+    }
+    // top right corner
+    else if (k == x2 && h == y1) {
+      this.store.wire(k, h, GamePiece.BOTTOM);
+    }
+    // bottom left corner
+    else if (k == x1 && h == y2) {
+      this.store.wire(k, h, GamePiece.RIGHT);
+      this.store.wire(k, h, GamePiece.TOP);
+    }
+    // bottom right corner
+    else if (k == x2 && h == y2) {
+      this.store.wire(k, h, GamePiece.LEFT);
+      this.store.wire(k, h, GamePiece.TOP);
+    }
+    // left column
+    else if (h != y1 && h != y2 && k == x1) {
+      this.store.wire(k, h, GamePiece.TOP);
+      this.store.wire(k, h, GamePiece.BOTTOM);
+    }
+    // right column
+    else if (h != y1 && h != y2 && k == x2) {
+      this.store.wire(k, h, GamePiece.TOP);
+      this.store.wire(k, h, GamePiece.BOTTOM);
+    }
+    // bottom row
+    else if (k != x1 && k != x2 && h == y2) {
+      this.store.wire(k, h, GamePiece.LEFT);
+      this.store.wire(k, h, GamePiece.RIGHT);
+    }
+  }
 
+  // EFFECT: pushes the quadrants of the given rectangle onto the stack
+  void splitRect(IndexList stack, int x1, int x2, int y1, int y2) {
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 0 && y1 % 2 == 0) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 1 && y1 % 2 == 0) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 0 && y1 == 0 && y2 == 1) {
       // top left quadrant
-      this.fractalWires(x1, Math.round(x2 / 2), y1, y2);
+      this.pushRect(stack, x1, Math.round(x2 / 2), y1, y2);
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 0 && y1 % 2 == 1 && y2 - y1 > 1) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));// +1
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));// +1
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 0 && y1 % 2 == 1 && y2 - y1 == 1) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2) + 1);// +1
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2) + 1);// +1
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 > 1 && x1 % 2 == 1 && y1 % 2 == 1 && y2 - y1 > 1) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2));
     }
     if (Math.ceil(x2 - x1 / 2) >= 1 && x2 - x1 >= 1 && y2 - y1 == 1) {
       // top left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2) + 1);
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), y1, Math.floorDiv(y2 + y1, 2) + 1);
     }
     if (x2 - ((Math.floorDiv((x2 - x1), 2)) + 1) >= 1 && x2 - x1 > 2 && y2 - y1 >= 2) {
       // top right quadrant when x1 == 0
-      this.fractalWires(Math.floorDiv(x2 + x1, 2) + 1, x2, y1, Math.floorDiv(y2 + y1, 2));
+      this.pushRect(stack, Math.floorDiv(x2 + x1, 2) + 1, x2, y1, Math.floorDiv(y2 + y1, 2));
     }
     if (x2 - ((Math.floorDiv((x2 - x1), 2)) + 1) >= 1 && x2 - x1 > 2 && y2 - y1 == 1) {
       // top right quadrant when x1 == 0
-      this.fractalWires(Math.floorDiv(x2 + x1, 2) + 1, x2, y1, Math.floorDiv(y2 + y1, 2) + 1);
+      this.pushRect(stack, Math.floorDiv(x2 + x1, 2) + 1, x2, y1, Math.floorDiv(y2 + y1, 2) + 1);
     }
     if (y2 - (Math.floorDiv((y2 - y1), 2) + 1) >= 1 && y2 - y1 > 2 && x2 - x1 > 1) {
       // bottom left quadrant
-      this.fractalWires(x1, Math.floorDiv(x2 + x1, 2), Math.floorDiv(y2 + y1, 2) + 1, y2);
+      this.pushRect(stack, x1, Math.floorDiv(x2 + x1, 2), Math.floorDiv(y2 + y1, 2) + 1, y2);
     }
     if ((y2 - (Math.floorDiv((y2 - y1), 2) + 1) >= 1 && y2 - y1 > 2 && x2 - x1 > 2)
             && (x2 - ((Math.floorDiv((x2 - x1), 2)) + 1) >= 1 && x2 - x1 > 2 && y2 - y1 > 2)) {
       // bottom right quadrant
-      this.fractalWires(Math.floorDiv(x2 + x1, 2) + 1, x2, Math.floorDiv(y2 + y1, 2) + 1, y2);
+      this.pushRect(stack, Math.floorDiv(x2 + x1, 2) + 1, x2, Math.floorDiv(y2 + y1, 2) + 1, y2);
     }
   }
 
   // EFFECT: generates a random, acyclic wire pattern using Kruskal's algorithm
   void kruskalWires() {
     this.genEdges();
-    while (this.edgesInTree.size() != this.nodes.size() - 1) {
-      Edge current = this.worklist.remove(0);
-      GamePiece fromNode = current.fromNode;
-      GamePiece toNode = current.toNode;
-      GamePiece fromRep = this.findRep(fromNode);
-      GamePiece toRep = this.findRep(toNode);
-      if (!fromRep.equals(toRep)) {
-        this.edgesInTree.add(current);
-        this.representatives.put(this.representatives.get(fromRep), toRep);
-      }
-    }
-    for (int i = 0; i < this.edgesInTree.size(); i++) {
-      Edge current = this.edgesInTree.get(i);
-      GamePiece fromNode = current.fromNode;
-      GamePiece toNode = current.toNode;
-      // NOTE: Does not check for top neighbor because
-      // Edges were generated sweeping towards the bottom right corner
-      if (fromNode.neighborHash.containsKey("right")
-              && fromNode.neighborHash.get("right").equals(toNode)) {
-        fromNode.wireRight = true;
-        toNode.wireLeft = true;
-      }
-      if (fromNode.neighborHash.containsKey("bottom")
-              && fromNode.neighborHash.get("bottom").equals(toNode)) {
-        fromNode.wireBot = true;
-        toNode.wireTop = true;
-      }
-      if (fromNode.neighborHash.containsKey("left")
-              && fromNode.neighborHash.get("left").equals(toNode)) {
-        fromNode.wireLeft = true;
-        toNode.wireRight = true;
+    this.checkInterrupted();
+    this.kruskal.run();
+    this.checkInterrupted();
+    for (int i = 0; i < this.kruskal.treeSize; i++) {
+      int edge = this.kruskal.tree[i];
+      int from = this.kruskal.fromCell(edge);
+      int to = this.kruskal.toCell(edge);
+      // NOTE: Edges only point right or down since they were generated
+      // sweeping towards the bottom right corner
+      if (this.kruskal.isRight(edge)) {
+        this.store.wires[from] = (byte) (this.store.wires[from] | GamePiece.RIGHT);
+        this.store.wires[to] = (byte) (this.store.wires[to] | GamePiece.LEFT);
+      }
+      else {
+        this.store.wires[from] = (byte) (this.store.wires[from] | GamePiece.BOTTOM);
+        this.store.wires[to] = (byte) (this.store.wires[to] | GamePiece.TOP);
       }
     }
     this.updateConnections();
-    if (this.scramble) {
-      for (int i = 0; i < this.nodes.size(); i++) {
-        GamePiece current = this.nodes.get(i);
-        int rotations = this.rand.nextInt(4);
-        for (int j = 0; j < rotations; j++) {
-          current.rotate("LeftButton");
+    this.scrambleWires();
+  }
+
+  // EFFECT: generates a random Minimum Spanning Tree like kruskalWires(), in parallel on the
+  // common ForkJoinPool; the same seed gives the same board on any number of cores
+  void boruvkaWires() {
+    this.boruvkaWires(ForkJoinPool.commonPool());
+  }
+
+  // EFFECT: generates the tree of boruvkaWires() on the given pool
+  void boruvkaWires(ForkJoinPool pool) {
+    BoruvkaEngine engine = new BoruvkaEngine(this.width, this.height, this.rand.nextLong());
+    engine.run(pool);
+    this.checkInterrupted();
+    engine.wire(pool, this.store.wires);
+    this.updateConnections();
+    this.scrambleWires();
+  }
+
+  // EFFECT: generates a uniformly random spanning tree with Wilson's algorithm: a random walk
+  // from each cell outside the tree until it hits the tree, keeping only the last direction
+  // taken out of every cell so the loops of the walk are erased. Needs no list of Edges
+  // The tree starts at the center of the board, where walks hit it soonest
+  void wilsonWires() {
+    byte[] inTree = new byte[this.store.cells];
+    // the direction the current walk last left each cell in
+    byte[] exit = new byte[this.store.cells];
+    inTree[(this.width / 2) * this.height + this.height / 2] = 1;
+    for (int start = 0; start < this.store.cells; start++) {
+      if (start % this.height == 0) {
+        this.checkInterrupted();
+      }
+      int cell = start;
+      while (inTree[cell] == 0) {
+        int next = -1;
+        while (next < 0) {
+          exit[cell] = (byte) (1 << this.rand.nextInt(4));
+          next = this.store.neighbor(cell, exit[cell]);
+        }
+        cell = next;
+      }
+      cell = start;
+      while (inTree[cell] == 0) {
+        inTree[cell] = 1;
+        this.store.link(cell, exit[cell]);
+        cell = this.store.neighbor(cell, exit[cell]);
+      }
+    }
+    this.updateConnections();
+    this.scrambleWires();
+  }
+
+  // EFFECT: generates a random spanning tree with Prim's algorithm, growing the tree from
+  // the top left corner through the lightest Edge out of it. Edges get random weights as they
+  // reach the tree and wait in an IntHeap as cell * 4 + the index of their direction
+  void primWires() {
+    byte[] inTree = new byte[this.store.cells];
+    IntHeap frontier = new IntHeap(16);
+    inTree[0] = 1;
+    this.growPrim(0, frontier, inTree);
+    while (frontier.size > 0) {
+      int edge = frontier.minValue();
+      frontier.pop();
+      int dir = 1 << (edge & 3);
+      int next = this.store.neighbor(edge >> 2, dir);
+      if (inTree[next] == 0) {
+        if (next % this.height == 0) {
+          this.checkInterrupted();
         }
+        inTree[next] = 1;
+        this.store.link(edge >> 2, dir);
+        this.growPrim(next, frontier, inTree);
+      }
+    }
+    this.updateConnections();
+    this.scrambleWires();
+  }
+
+  // EFFECT: adds the Edges from the given cell to cells outside of the tree, with random
+  // weights, to frontier
+  void growPrim(int cell, IntHeap frontier, byte[] inTree) {
+    for (int d = 0; d < 4; d++) {
+      int next = this.store.neighbor(cell, 1 << d);
+      if (next >= 0 && inTree[next] == 0) {
+        frontier.push(this.rand.nextInt(), cell * 4 + d);
       }
     }
   }
 
-  // to return the deepest GamePiece for a given key in the representatives HashMap
+  // EFFECT: rotates every GamePiece a random number of times if the board is scrambled
+  void scrambleWires() {
+    if (this.scramble) {
+      this.store.scramble(this.rand);
+    }
+  }
+
+  // to return the GamePiece representing the set that contains the given GamePiece; before
+  // genEdges() every GamePiece is a set of its own
   GamePiece findRep(GamePiece key) {
-    GamePiece currentRep = this.representatives.get(key);
-    if (currentRep.equals(key)) {
-      return key;
+    if (this.representatives == null) {
+      return this.pieceAt(this.indexOf(key));
     }
-    else {
-      return this.findRep(currentRep);
+    return this.pieceAt(this.representatives.find(this.indexOf(key)));
+  }
+
+  // to return the GamePiece of the given cell: its view in nodes, or a new view over store
+  // when they are turned off
+  GamePiece pieceAt(int cell) {
+    if (this.views) {
+      return this.nodes.get(cell);
     }
+    return new GamePiece(cell / this.height, cell % this.height, this.store);
+  }
+
+  // to return the index of the given GamePiece in nodes (column-major)
+  int indexOf(GamePiece gp) {
+    return gp.col * this.height + gp.row;
   }
 
   // EFFECT: generates all Edges in this graph sorted by randomly assigned weights
   void genEdges() {
-    int maxWeight = this.nodes.size();
-    for (int i = 0; i < this.width; i++) {
-      for (int j = 0; j < this.height; j++) {
-        // target node
-        GamePiece target = this.board.get(i).get(j);
-        this.representatives.put(target, target);
-        // GamePiece in last col connects to bottom neighbors
-        if (i == this.width - 1 && j < this.height - 1) {
-          this.worklist.add(new Edge(target,
-                  this.board.get(i).get(j + 1), maxWeight, this.rand));
-        }
-        // GamePiece in last row connects to right neighbors
-        else if (i < this.width - 1 && j == this.height - 1) {
-          this.worklist.add(new Edge(target,
-                  this.board.get(i + 1).get(j), maxWeight, this.rand));
-        }
-        // GamePieces remaining connect to bottom and right neighbors
-        else if (i < this.width - 1 && j < this.height - 1) {
-          this.worklist.add(new Edge(target,
-                  this.board.get(i + 1).get(j), maxWeight, this.rand));
-          this.worklist.add(new Edge(target,
-                  this.board.get(i).get(j + 1), maxWeight, this.rand));
-        }
-        // NOTE: Bottom right corner does not generate edges
+    this.kruskal = new KruskalEngine(this.width, this.height);
+    this.kruskal.genEdges(this.rand);
+    this.checkInterrupted();
+    this.kruskal.sortEdges();
+    this.representatives = this.kruskal.sets;
+  }
+
+  // EFFECT: refreshes the connections of the GamePiece at the given cell and its neighbors,
+  // the only GamePieces whose connections a rotation of that cell can change
+  void refreshAround(int cell) {
+    this.refresh(cell);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir * 2) {
+      int next = this.store.neighbor(cell, dir);
+      if (next >= 0) {
+        this.refresh(next);
       }
     }
-    // calls mergeSort to sort list of Edges by their weight
-    new Utils().mergesort(this.worklist, new HeavierThan());
   }
 
-  // EFFECT: updates connections between GamePieces after any operation
+  // EFFECT: refreshes the connections of the given cell in conn
+  void refresh(int cell) {
+    this.store.refresh(cell);
+    this.touched = this.touched + 1;
+  }
+
+  // EFFECT: moves the powerStation to the given cell, marking only the old and new
+  // powerStation cells to be drawn again
+  void moveStation(int col, int row) {
+    int from = this.store.station;
+    this.powerCol = col;
+    this.powerRow = row;
+    this.store.station = col * this.height + row;
+    this.frame.mark(from);
+    this.frame.mark(this.store.station);
+    this.touched = this.touched + 2;
+  }
+
+  // to return the number of GamePieces refreshed by the last click or key press
+  int touchedCells() {
+    return this.touched;
+  }
+
+  // EFFECT: updates connections between all GamePieces; only needed when the whole board
+  // changes at once, as in init()
   void updateConnections() {
-    for (int i = 0; i < this.nodes.size(); i++) {
-      this.nodes.get(i).updateConnections();
-      this.nodes.get(i).updatePowerStation(this.powerCol, this.powerRow);
+    this.store.station = this.powerCol * this.height + this.powerRow;
+    this.connectAll();
+    this.touched = this.store.cells;
+  }
+
+  // EFFECT: powers up every GamePiece connected to the powerStation, within its radius
+  void powerUp() {
+    int station = this.store.station;
+    if (this.bitFlood) {
+      this.bits.load(this.store.wires);
+      this.bits.connect();
+      this.power.floodBits(this.bits, station, this.radius, Integer.MAX_VALUE);
+    }
+    else {
+      this.power.flood(this.conn, station, this.radius);
+    }
+    this.syncReached(0);
+    this.dimLeft(Long.MAX_VALUE);
+    this.powered = this.power.powered;
+  }
+
+  // EFFECT: powers the board again after its connections, powerStation or radius changed.
+  // With a powerBudget, only a flood that reaches powerStation is begun, and the GamePieces
+  // it leaves behind are drawn with their old power until onTick() carries it on and dims
+  // them
+  void repowerAll() {
+    if (this.powerBudget > 0) {
+      this.power.begin(this.store.station, this.radius);
+      this.syncReached(0);
+      this.powered = this.power.powered;
+    }
+    else {
+      this.powerDown();
+      this.powerUp();
+    }
+  }
+
+  // EFFECT: carries the search begun by followRadius() on until System.nanoTime() passes the
+  // given deadline, then floods power again if it finished with a new radius
+  void carryRadius(long deadline) {
+    if (this.live.resume(this.conn, deadline) && this.live.version == this.store.version) {
+      int old = this.radius;
+      this.radius = this.live.radius();
+      if (this.radius != old) {
+        this.repowerAll();
+      }
+    }
+  }
+
+  // EFFECT: dims the GamePieces the last flood left behind and carries the current one on
+  // until System.nanoTime() passes the given deadline, so that power spreads out from
+  // powerStation a wave at a time. Tells listeners if the finished flood solved the puzzle
+  void carryPower(long deadline) {
+    this.dimLeft(deadline);
+    if (this.power.flooding) {
+      int from = this.power.reached.size();
+      this.power.resume(this.conn, deadline);
+      this.syncReached(from);
+      this.powered = this.power.powered;
+      if (!this.power.flooding) {
+        this.checkSolved();
+      }
+    }
+  }
+
+  // EFFECT: marks the cells reached by the last flood, from the given position of reached
+  // on, to be drawn again
+  void syncReached(int from) {
+    for (int i = from; i < this.power.reached.size(); i++) {
+      this.frame.mark(this.power.reached.get(i));
+    }
+  }
+
+  // EFFECT: marks the cells reached before the last flood began to be drawn again, SLICE
+  // cells at a time until System.nanoTime() passes the given deadline
+  void dimLeft(long deadline) {
+    IndexSet fading = this.power.fading;
+    while (fading != null && this.power.dimmed < fading.size()) {
+      int end = Math.min(this.power.dimmed + PowerEngine.SLICE, fading.size());
+      for (int i = this.power.dimmed; i < end; i++) {
+        this.frame.mark(fading.get(i));
+      }
+      this.power.dimmed = end;
+      if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+        return;
+      }
+    }
+  }
+
+  // EFFECT: repowers only the GamePieces whose distance may have changed after the
+  // connections of the given cell changed from oldMask
+  void repower(int cell, int oldMask) {
+    this.power.rotated(this.conn, cell, oldMask);
+    for (int i = 0; i < this.power.changed.size(); i++) {
+      this.frame.mark(this.power.changed.get(i));
     }
   }
 
   // EFFECT: powers down the board for safety before any operation (OnMouseClicked or OnKey)
+  // Only the GamePieces reached by the last powerUp() can hold any power
   void powerDown() {
-    for (int i = 0; i < this.nodes.size(); i++) {
-      this.nodes.get(i).powerDown(this.powered);
+    for (int i = 0; i < this.power.reached.size(); i++) {
+      this.frame.mark(this.power.reached.get(i));
     }
-    this.powered = new ArrayList<>();
+    this.power.clear();
+    this.powered = this.power.powered;
   }
 
   // EFFECT: updates the effective radius of the power station using BFS
   void findRadius() {
-    int maxDepth = 0;
-    HashMap<Integer, GamePiece> firstLast =
-            this.findDeepest(this.board.get(powerCol).get(powerRow), 0, new ArrayList<>());
-    for (int key : firstLast.keySet()) {
-      maxDepth = key;
-    }
-    HashMap<Integer, GamePiece> secondLast =
-            this.findDeepest(firstLast.get(maxDepth), 0, new ArrayList<>());
-    for (int key : secondLast.keySet()) {
-      maxDepth = key;
-    }
-    this.radius = maxDepth / 2 + 1;
+    int first = this.diameter.farthestFrom(this.conn, this.store.station);
+    this.diameter.farthestFrom(this.conn, first);
+    this.radius = this.diameter.depth / 2 + 1;
+  }
+
+  // EFFECT: refreshes the connections of every cell in conn, eight cells at a time
+  void connectAll() {
+    this.store.connectAll();
   }
 
   // uses BFS to return a HashMap of length 1. The HashMap contains:
@@ -509,314 +1123,308 @@ class LightEmAll extends World {
   HashMap<Integer, GamePiece> findDeepest(GamePiece start,
                                           int depth,
                                           ArrayList<GamePiece> acc) {
-    // Next group of nodes to be checked (if any)
-    ArrayList<GamePiece> nextLevel = new ArrayList<>();
-    // Loop to update nextLevel with currentLast's neighbors (if any)
-    // updates accumulator accordingly
-    for (String key : start.neighborHash.keySet()) {
-      GamePiece toCheck = start.neighborHash.get(key);
-      if (!acc.contains(toCheck) && toCheck.isConnected(start)) {
-        nextLevel.add(toCheck); 
-      }
-    }
-    // initialize results variable to an empty HashMap
-    HashMap<Integer, GamePiece> results = new HashMap<>();
-    // If there are no more nodes to check, return HashMap with depth, start pair
-    if (nextLevel.size() == 0) {
-      results.put(depth, start);
-    }
-    // If there are more nodes to be check, update accumulator and call helper
-    else {
-      acc.add(start);
-      results = this.findDeeper(nextLevel, depth + 1, acc);
-    }
-    return results;
+    ArrayList<GamePiece> level = new ArrayList<>();
+    level.add(start);
+    return this.findDeeper(level, depth, acc);
   }
 
-  // helper for findDeepest() to check ArrayLists of neighbors when their size > 1
+  // helper for findDeepest() to search from a whole level of GamePieces at the given depth,
+  // never visiting the GamePieces in the accumulator
   HashMap<Integer, GamePiece> findDeeper(ArrayList<GamePiece> prevLevel,
                                          int depth,
                                          ArrayList<GamePiece> acc) {
-    // Next group of nodes to be checked (if any)
-    ArrayList<GamePiece> nextLevel = new ArrayList<>();
-    // An arbitrary node from this level to be returned if no deeper GamePiece is found
-    GamePiece nowDeepest = prevLevel.get(0);
-    // If there is only one node to check, update accumulator and call original method
-    if (prevLevel.size() == 1) {
-      acc.add(nowDeepest);
-      return findDeepest(nowDeepest, depth, acc);
-    }
-    // If there is more than one node to check, check all their neighbors
-    else {
-      // First loop checks every node in prevLevel (if not in accumulator)
-      for (int i = 0; i < prevLevel.size(); i++) {
-        nowDeepest = prevLevel.get(i);
-        if (!acc.contains(nowDeepest)) {
-          // Second loop adds unchecked neighbors to nextLevel (if not in accumulator)
-          for (String key : nowDeepest.neighborHash.keySet()) {
-            GamePiece aNeighbor = nowDeepest.neighborHash.get(key);
-            if (aNeighbor.isConnected(nowDeepest)
-                    && (!acc.contains(aNeighbor) && !nextLevel.contains(aNeighbor))) {
-              nextLevel.add(aNeighbor);
-            }
-          }
-        }
-        // Update the accumulator
-        acc.add(nowDeepest);
-      }
+    this.connectAll();
+    this.diameter.begin();
+    for (int i = 0; i < acc.size(); i++) {
+      this.diameter.exclude(this.indexOf(acc.get(i)));
     }
-    // initialize results variable to an empty HashMap
-    HashMap<Integer, GamePiece> results = new HashMap<>();
-    // If there are no more nodes to check, return HashMap with depth, nowDeepest pair
-    if (nextLevel.size() == 0) {
-      results.put(depth, nowDeepest);
-    }
-    // If there are more nodes to be checked, call this method recursively
-    else {
-      // NOTE: no need to update accumulator since it was updated in previous if-else statement
-      results = this.findDeeper(nextLevel, depth + 1, acc);
+    for (int i = 0; i < prevLevel.size(); i++) {
+      this.diameter.seed(this.indexOf(prevLevel.get(i)));
     }
+    this.diameter.run(this.conn);
+    HashMap<Integer, GamePiece> results = new HashMap<>();
+    results.put(depth + this.diameter.depth, this.pieceAt(this.diameter.farthest));
     return results;
   }
 
 }
 
-//to represent a GamePiece in a LightEmAll game
+//to represent a GamePiece in a LightEmAll game: a view over one cell of a BoardStore,
+//whose wires, connections, power and powerStation it reads and writes in place
 class GamePiece {
-// x value of this GamePiece in its parent LightEmAll board
-int col;
-// y value of this GamePiece in its parent LightEmAll board
-int row;
-// does this GamePiece have outgoing wires?
-boolean wireLeft;
-boolean wireRight;
-boolean wireTop;
-boolean wireBot;
-// does this GamePiece connect to its neighbors through wires?
-boolean lef;
-boolean rig;
-boolean top;
-boolean bot;
-// does this GamePiece contain a powerStation?
-boolean powerStation;
-// a list of all neighbors of this GamePiece (independent of wire connection)
-ArrayList<GamePiece> neighborList;
-// a HashMap of all neighbors of this GamePiece. HashMap contains:
-//  - key: String representing the location in which a neighbor is located
-//  - value: a neighboring GamePiece
-HashMap<String, GamePiece> neighborHash;
-// is this GamePiece receiving power?
-boolean isPowered;
-// how far away is this GamePiece from the powerStation?
-int distFromPower;
-
-// Constructor for a GamePiece
-GamePiece(int i, int j) {
- this.row = j;
- this.col = i;
- this.lef = false;
- this.rig = false;
- this.top = false;
- this.bot = false;
- this.wireLeft = false;
- this.wireRight = false;
- this.wireTop = false;
- this.wireBot = false;
- this.powerStation = false;
- this.neighborList = new ArrayList<>();
- this.neighborHash = new HashMap<>();
- this.distFromPower = 2147483647;
-}
+ // bits of a mask of directions: wires or connections of a GamePiece
+ static final int TOP = 1;
+ static final int RIGHT = 2;
+ static final int BOTTOM = 4;
+ static final int LEFT = 8;
+ // the colors of a wire, from the powerStation to beyond its radius
+ static final Color[] GRADIENT = {
+   new Color(255, 255, 204), new Color(255, 255, 153), new Color(255, 255, 102),
+   new Color(255, 255, 51), new Color(240, 230, 0), new Color(204, 204, 0),
+   new Color(153, 153, 0), new Color(102, 102, 0), new Color(75, 75, 0), Color.black };
+ // the fraction of the radius up to which each color of GRADIENT is used
+ static final double[] GRADIENT_STOPS = {
+   0.010, 0.025, 0.050, 0.100, 0.125, 0.50, 0.75, 0.95, 1.0 };
+ // x value of this GamePiece in its parent LightEmAll board
+ int col;
+ // y value of this GamePiece in its parent LightEmAll board
+ int row;
+ // the board holding this GamePiece's cell, and the index of the cell in it
+ BoardStore store;
+ int index;
 
-// to draw this piece given its wire specifications
-WorldImage draw(int size, int radius) {
- Color power = this.powerGradient(radius);
- WorldImage wi = new OverlayImage(
-         new RectangleImage(size - 1, size - 1, OutlineMode.SOLID, Color.DARK_GRAY),
-         new RectangleImage(size, size, OutlineMode.SOLID, Color.black));
- if (this.wireRight) { // if there is a right wire
-   wi = new OverlayOffsetAlign(AlignModeX.RIGHT, AlignModeY.MIDDLE,
-           new RectangleImage(20, 3, OutlineMode.SOLID, power), 0, 0, wi);
- }
- if (this.wireLeft) { // if there is a left wire
-   wi = new OverlayOffsetAlign(AlignModeX.LEFT, AlignModeY.MIDDLE,
-           new RectangleImage(20, 3, OutlineMode.SOLID, power), 0, 0, wi);
+ // Constructor for a GamePiece at the given column and row on a board of its own, which
+ // holds its cell alone
+ GamePiece(int i, int j) {
+  this.col = i;
+  this.row = j;
+  this.store = new BoardStore(1, 1);
+  this.index = 0;
  }
- if (this.wireTop) { // if there is a top wire
-   wi = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.TOP,
-           new RectangleImage(3, 20, OutlineMode.SOLID, power), 0, 0, wi);
- }
- if (this.wireBot) { // if there is a bottom wire
-   wi = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.BOTTOM,
-           new RectangleImage(3, 20, OutlineMode.SOLID, power), 0, 0, wi);
+
+ // Constructor for a GamePiece over the cell at the given column and row of the given board
+ GamePiece(int i, int j, BoardStore store) {
+  this.col = i;
+  this.row = j;
+  this.store = store;
+  this.index = i * store.height + j;
  }
- return wi;
-}
 
-// returns a color according to the distFromPower
-Color powerGradient(int radius) {
- if (this.distFromPower <= 0.010 * radius) {
-   return new Color(255, 255, 204);
+ // to return the index of this GamePiece's cell in its BoardStore
+ int cell() {
+  return this.index;
  }
- if (this.distFromPower <= 0.025 * radius) {
-   return new Color(255, 255, 153);
+
+ // are two GamePieces views of the same cell of the same board?
+ @Override
+ public boolean equals(Object other) {
+  if (!(other instanceof GamePiece)) {
+    return false;
+  }
+  GamePiece that = (GamePiece) other;
+  return this.store == that.store && this.col == that.col && this.row == that.row;
  }
- if (this.distFromPower <= 0.050 * radius) {
-   return new Color(255, 255, 102);
+
+ // to return a hash code consistent with equals()
+ @Override
+ public int hashCode() {
+  return System.identityHashCode(this.store) * 31 + this.cell();
  }
- if (this.distFromPower <= 0.100 * radius) {
-   return new Color(255, 255, 51);
+
+ // to draw this piece given its wire specifications
+ WorldImage draw(int size, int radius) {
+  return new TileCache(size).render(this.wireMask(), this.powerGradient(radius));
  }
- if (this.distFromPower <= 0.125 * radius) {
-   return new Color(240, 230, 0);
+
+ // does this GamePiece have an outgoing wire to the top?
+ boolean wireTop() {
+  return (this.wireMask() & TOP) != 0;
  }
- if (this.distFromPower <= 0.50 * radius) {
-   return new Color(204, 204, 0);
+
+ // does this GamePiece have an outgoing wire to the right?
+ boolean wireRight() {
+  return (this.wireMask() & RIGHT) != 0;
  }
- if (this.distFromPower <= 0.75 * radius) {
-   return new Color(153, 153, 0);
+
+ // does this GamePiece have an outgoing wire to the bottom?
+ boolean wireBot() {
+  return (this.wireMask() & BOTTOM) != 0;
  }
- if (this.distFromPower <= 0.95 * radius) {
-   return new Color(102, 102, 0);
+
+ // does this GamePiece have an outgoing wire to the left?
+ boolean wireLeft() {
+  return (this.wireMask() & LEFT) != 0;
  }
- if (this.distFromPower <= radius) {
-   return new Color(75, 75, 0);
+
+ // does this GamePiece connect to its top neighbor through wires?
+ boolean top() {
+  return (this.connectionMask() & TOP) != 0;
  }
- return Color.black;
-}
 
-// EFFECT: adds the given GamePiece to this GamePiece's neighbors
-void addNeighbor(String str, GamePiece neighbor) {
- if (str.equals("top")) {
-   this.neighborList.add(neighbor);
-   this.neighborHash.put("top", neighbor);
+ // does this GamePiece connect to its right neighbor through wires?
+ boolean rig() {
+  return (this.connectionMask() & RIGHT) != 0;
  }
- if (str.equals("right")) {
-   this.neighborList.add(neighbor);
-   this.neighborHash.put("right", neighbor);
+
+ // does this GamePiece connect to its bottom neighbor through wires?
+ boolean bot() {
+  return (this.connectionMask() & BOTTOM) != 0;
  }
- if (str.equals("bottom")) {
-   this.neighborList.add(neighbor);
-   this.neighborHash.put("bottom", neighbor);
+
+ // does this GamePiece connect to its left neighbor through wires?
+ boolean lef() {
+  return (this.connectionMask() & LEFT) != 0;
  }
- if (str.equals("left")) {
-   this.neighborList.add(neighbor);
-   this.neighborHash.put("left", neighbor);
+
+ // does this GamePiece contain the powerStation?
+ boolean powerStation() {
+  return this.store.station == this.cell();
  }
-}
 
-// EFFECT: rotates the piece 90 degrees counter clockwise
-void rotate(String direction) {
- if (direction.equals("LeftButton")) {
-   boolean temp = this.wireRight;
-   this.wireRight = this.wireBot;
-   this.wireBot = this.wireLeft;
-   this.wireLeft = this.wireTop;
-   this.wireTop = temp;
+ // is this GamePiece receiving power?
+ boolean isPowered() {
+  return this.store.power.isPowered(this.cell());
  }
- if (direction.equals("RightButton")) {
-   boolean temp = this.wireRight;
-   this.wireRight = this.wireTop;
-   this.wireTop = this.wireLeft;
-   this.wireLeft = this.wireBot;
-   this.wireBot = temp;
+
+ // to return how far away this GamePiece is from the powerStation, or Integer.MAX_VALUE
+ // if no wires join them
+ int distFromPower() {
+  return this.store.power.distOf(this.cell());
  }
- this.updateConnections();
-}
 
-// EFFECT: updates this GamePiece's connections according to new wire locations
-void updateConnections() {
- this.top = false;
- this.rig = false;
- this.bot = false;
- this.lef = false;
- if (this.wireTop && this.neighborHash.containsKey("top")
-         && this.neighborHash.get("top").wireBot) {
-   this.top = true;
+ // EFFECT: records whether this GamePiece is receiving power
+ void setPowered(boolean powered) {
+  this.store.power.setPowered(this.cell(), powered);
  }
- if (this.wireRight && this.neighborHash.containsKey("right")
-         && this.neighborHash.get("right").wireLeft) {
-   this.rig = true;
+
+ // EFFECT: records how far away this GamePiece is from the powerStation
+ void setDistFromPower(int distance) {
+  this.store.power.setDist(this.cell(), distance);
  }
- if (this.wireBot && this.neighborHash.containsKey("bottom")
-         && this.neighborHash.get("bottom").wireTop) {
-   this.bot = true;
+
+ // to return the directions of this GamePiece's own wires as a mask
+ int wireMask() {
+  return this.store.wires[this.cell()];
  }
- if (this.wireLeft && this.neighborHash.containsKey("left")
-         && this.neighborHash.get("left").wireRight) {
-   this.lef = true;
+
+ // EFFECT: sets this GamePiece's own wires from a mask, leaving its connections as they are
+ void setWireMask(int mask) {
+  this.store.wires[this.cell()] = (byte) mask;
  }
-}
 
-// EFFECT: updates whether or not this GamePiece contains a powerStation
-void updatePowerStation(int x, int y) {
- this.powerStation = x == this.col && y == this.row;
-}
+ // returns a color according to the distFromPower
+ Color powerGradient(int radius) {
+  return GRADIENT[this.powerBucket(radius)];
+ }
 
-// is this GamePiece directly connected to the given GamePiece?
-boolean isConnected(GamePiece curr) {
- if (this.row + 1 == curr.row && this.col == curr.col) {
-   return this.wireBot && curr.wireTop;
+ // to return which color of GRADIENT this GamePiece is drawn with: the first whose
+ // fraction of the radius covers distFromPower, or the last (black) if none does
+ int powerBucket(int radius) {
+  return GamePiece.bucketOf(this.distFromPower(), radius);
  }
- if (this.row == curr.row && this.col + 1 == curr.col) {
-   return this.wireRight && curr.wireLeft;
+
+ // to return which color of GRADIENT a cell at the given distance from power is drawn with
+ static int bucketOf(int distFromPower, int radius) {
+  for (int i = 0; i < GRADIENT_STOPS.length; i++) {
+    if (distFromPower <= GRADIENT_STOPS[i] * radius) {
+      return i;
+    }
+  }
+  return GRADIENT_STOPS.length;
  }
- if (this.row - 1 == curr.row && this.col == curr.col) {
-   return this.wireTop && curr.wireBot;
+
+ // to return the GamePiece next to this one in the given direction, or null off the board
+ GamePiece neighbor(int dir) {
+  int next = this.store.neighbor(this.cell(), dir);
+  if (next < 0) {
+    return null;
+  }
+  return new GamePiece(next / this.store.height, next % this.store.height, this.store);
  }
- if (this.row == curr.row && this.col - 1 == curr.col) {
-   return this.wireLeft && curr.wireRight;
+
+ // to return all neighbors of this GamePiece, independent of wire connection, from the top
+ // clockwise
+ ArrayList<GamePiece> neighbors() {
+  ArrayList<GamePiece> result = new ArrayList<>();
+  for (int dir = TOP; dir <= LEFT; dir = dir * 2) {
+    GamePiece next = this.neighbor(dir);
+    if (next != null) {
+      result.add(next);
+    }
+  }
+  return result;
  }
- else {
-   return false;
+
+ // EFFECT: rotates the piece 90 degrees counter clockwise
+ void rotate(String direction) {
+  this.store.rotate(this.cell(), direction);
+  this.updateConnections();
  }
-}
 
-// to return an ArrayList of GamePieces that are powered
-// EFFECT: updates how much power is received by the board using BFS
-ArrayList<GamePiece> powerUp(int radius,
-                            int distFromPower,
-                            ArrayList<GamePiece> acc,
-                            ArrayList<GamePiece> powered) {
- acc.add(this);
- this.distFromPower = distFromPower;
- if (distFromPower <= radius) {
-   this.isPowered = true;
-   powered.add(this);
+ // EFFECT: updates this GamePiece's connections according to new wire locations
+ void updateConnections() {
+  this.store.refresh(this.cell());
  }
- else {
-   this.isPowered = false;
+
+ // to return this GamePiece's connections as a mask, as of the last updateConnections()
+ int connectionMask() {
+  return this.store.conn[this.cell()];
  }
- ArrayList<GamePiece> toCheck = new ArrayList<>();
- if (this.top) {
-   toCheck.add(this.neighborHash.get("top"));
+
+ // EFFECT: sets this GamePiece's connections from a mask
+ void setConnectionMask(int mask) {
+  this.store.connect(this.cell(), mask);
  }
- if (this.rig) {
-   toCheck.add(this.neighborHash.get("right"));
+
+ // EFFECT: moves the powerStation of this GamePiece's board to the given column and row,
+ // so that this GamePiece contains it only if they are its own
+ void updatePowerStation(int x, int y) {
+  this.store.station = x * this.store.height + y;
  }
- if (this.bot) {
-   toCheck.add(this.neighborHash.get("bottom"));
+
+ // is this GamePiece directly connected to the given GamePiece?
+ boolean isConnected(GamePiece curr) {
+  if (this.row + 1 == curr.row && this.col == curr.col) {
+    return this.wireBot() && curr.wireTop();
+  }
+  if (this.row == curr.row && this.col + 1 == curr.col) {
+    return this.wireRight() && curr.wireLeft();
+  }
+  if (this.row - 1 == curr.row && this.col == curr.col) {
+    return this.wireTop() && curr.wireBot();
+  }
+  if (this.row == curr.row && this.col - 1 == curr.col) {
+    return this.wireLeft() && curr.wireRight();
+  }
+  else {
+    return false;
+  }
  }
- if (this.lef) {
-   toCheck.add(this.neighborHash.get("left"));
+
+ // to return the directions in which this GamePiece is wired to its neighbors as a mask
+ int wiredMask() {
+  return this.store.wiredMask(this.cell());
  }
- if (toCheck.size() != 0) {
-   for (int i = 0; i < toCheck.size(); i++) {
-     GamePiece node = toCheck.get(i);
-     if (!acc.contains(node) && this.isConnected(node)) {
-       node.powerUp(radius, distFromPower + 1, acc, powered);
-     }
-   }
+
+ // to return an ArrayList of GamePieces that are powered
+ // EFFECT: updates how much power is received by the board using BFS
+ // The accumulator holds every GamePiece reached so far and doubles as the BFS queue
+ ArrayList<GamePiece> powerUp(int radius,
+                              int distFromPower,
+                              ArrayList<GamePiece> acc,
+                              ArrayList<GamePiece> powered) {
+  HashSet<GamePiece> seen = new HashSet<>(acc);
+  int head = acc.size();
+  this.setDistFromPower(distFromPower);
+  acc.add(this);
+  seen.add(this);
+  while (head < acc.size()) {
+    GamePiece node = acc.get(head);
+    head = head + 1;
+    node.setPowered(node.distFromPower() <= radius);
+    if (node.isPowered()) {
+      powered.add(node);
+    }
+    for (int dir = TOP; dir <= LEFT; dir = dir * 2) {
+      if ((node.connectionMask() & dir) != 0) {
+        GamePiece next = node.neighbor(dir);
+        if (!seen.contains(next) && node.isConnected(next)) {
+          seen.add(next);
+          next.setDistFromPower(node.distFromPower() + 1);
+          acc.add(next);
+        }
+      }
+    }
+  }
+  return powered;
  }
- return powered;
-}
 
-// EFFECT: shuts down the power in this GamePiece
-void powerDown(ArrayList<GamePiece> powered) {
- this.isPowered = false;
- this.distFromPower = 2147483647;
- this.updateConnections();
-}
+ // EFFECT: shuts down the power in this GamePiece
+ void powerDown(ArrayList<GamePiece> powered) {
+  this.setPowered(false);
+  this.setDistFromPower(Integer.MAX_VALUE);
+  this.updateConnections();
+ }
 }
 
 //to represent an Edge in a LightEmAll game
@@ -909,10 +1517,2929 @@ class Utils {
 }
 }
 
+// to represent a union-find structure over cell indices
+class DisjointSet {
+  // the parent of each cell; a cell is a representative when it is its own parent
+  int[] parent;
+  // the number of cells in the set of each representative
+  int[] size;
+  // the number of disjoint sets left
+  int count;
+
+  // Constructor for a DisjointSet where every cell starts in its own set
+  DisjointSet(int n) {
+    this.parent = new int[n];
+    this.size = new int[n];
+    this.count = n;
+    for (int i = 0; i < n; i++) {
+      this.parent[i] = i;
+      this.size[i] = 1;
+    }
+  }
+
+  // to return the representative of the set containing the given cell
+  // EFFECT: halves the path from the cell to its representative
+  int find(int cell) {
+    while (this.parent[cell] != cell) {
+      this.parent[cell] = this.parent[this.parent[cell]];
+      cell = this.parent[cell];
+    }
+    return cell;
+  }
+
+  // to return whether the two given cells are in the same set
+  boolean connected(int a, int b) {
+    return this.find(a) == this.find(b);
+  }
+
+  // to return whether the two given cells were in different sets
+  // EFFECT: merges the smaller of the two sets into the larger one
+  boolean union(int a, int b) {
+    int repA = this.find(a);
+    int repB = this.find(b);
+    if (repA == repB) {
+      return false;
+    }
+    if (this.size[repA] < this.size[repB]) {
+      int temp = repA;
+      repA = repB;
+      repB = temp;
+    }
+    this.parent[repB] = repA;
+    this.size[repA] = this.size[repA] + this.size[repB];
+    this.count = this.count - 1;
+    return true;
+  }
+}
+
+// to represent Kruskal's algorithm over packed Edges between the cells of a board
+// Each Edge is an int: (cell index << 1) | 1 when it points down, | 0 when it points right
+class KruskalEngine {
+  // dimensions of the board
+  int width;
+  int height;
+  // every Edge of the board in generation order, and their random weights
+  int[] edges;
+  int[] weights;
+  // the Edges ordered by weight, and the next one to be considered
+  int[] sorted;
+  int cursor;
+  // the number of Edges generated
+  int count;
+  // the Edges accepted into the Minimum Spanning Tree
+  int[] tree;
+  int treeSize;
+  // to track which cells already share a tree
+  DisjointSet sets;
+
+  // Constructor for a KruskalEngine over a board of the given dimensions
+  KruskalEngine(int width, int height) {
+    int maxEdges = Math.max(0, (width - 1) * height + width * (height - 1));
+    this.width = width;
+    this.height = height;
+    this.edges = new int[maxEdges];
+    this.weights = new int[maxEdges];
+    this.sorted = new int[maxEdges];
+    this.tree = new int[Math.max(0, width * height - 1)];
+    this.sets = new DisjointSet(width * height);
+  }
+
+  // EFFECT: generates every Edge with a random weight in [0, width * height)
+  // Edges are swept column by column so a seeded Random reproduces the same board
+  void genEdges(Random rand) {
+    int maxWeight = this.width * this.height;
+    this.count = 0;
+    for (int i = 0; i < this.width; i++) {
+      for (int j = 0; j < this.height; j++) {
+        int cell = i * this.height + j;
+        if (i < this.width - 1) {
+          this.add(cell << 1, rand.nextInt(maxWeight));
+        }
+        if (j < this.height - 1) {
+          this.add((cell << 1) | 1, rand.nextInt(maxWeight));
+        }
+      }
+    }
+  }
+
+  // EFFECT: appends the given Edge with the given weight
+  void add(int edge, int weight) {
+    this.edges[this.count] = edge;
+    this.weights[this.count] = weight;
+    this.count = this.count + 1;
+  }
+
+  // EFFECT: orders the Edges by weight with a stable counting sort
+  // Weights are bounded by the number of cells, so this runs in O(V + E)
+  void sortEdges() {
+    int[] starts = new int[this.width * this.height + 1];
+    for (int i = 0; i < this.count; i++) {
+      starts[this.weights[i] + 1] = starts[this.weights[i] + 1] + 1;
+    }
+    for (int w = 1; w < starts.length; w++) {
+      starts[w] = starts[w] + starts[w - 1];
+    }
+    for (int i = 0; i < this.count; i++) {
+      int w = this.weights[i];
+      this.sorted[starts[w]] = this.edges[i];
+      starts[w] = starts[w] + 1;
+    }
+    this.cursor = 0;
+  }
+
+  // EFFECT: accepts the lightest Edges that join separate trees until the tree spans the board
+  void run() {
+    int target = this.tree.length;
+    while (this.treeSize < target && this.cursor < this.count) {
+      int edge = this.sorted[this.cursor];
+      this.cursor = this.cursor + 1;
+      if (this.sets.union(this.fromCell(edge), this.toCell(edge))) {
+        this.tree[this.treeSize] = edge;
+        this.treeSize = this.treeSize + 1;
+      }
+    }
+  }
+
+  // to return the cell an Edge starts from
+  int fromCell(int edge) {
+    return edge >> 1;
+  }
+
+  // to return the cell an Edge points to
+  int toCell(int edge) {
+    if (this.isRight(edge)) {
+      return (edge >> 1) + this.height;
+    }
+    else {
+      return (edge >> 1) + 1;
+    }
+  }
+
+  // does the given Edge point to the right neighbor?
+  boolean isRight(int edge) {
+    return (edge & 1) == 0;
+  }
+}
+
+// to represent an iterative BFS over the connections of a board, indexed like
+// LightEmAll.nodes, that finds the deepest cell from a set of starting cells
+class DiameterEngine {
+  // height of the board, to step between columns
+  int height;
+  // cells waiting to be visited; [0, tail) holds every cell reached by this search
+  int[] queue;
+  int tail;
+  // a cell was visited by this search if its stamp equals epoch
+  int[] visited;
+  int epoch;
+  // the deepest cell found by the last search and its depth
+  int farthest;
+  int depth;
+
+  // Constructor for a DiameterEngine over a board of the given dimensions
+  DiameterEngine(int width, int height) {
+    this.height = height;
+    this.queue = new int[width * height];
+    this.visited = new int[width * height];
+    this.epoch = 0;
+    this.farthest = -1;
+  }
+
+  // to return the deepest cell reachable from the given cell
+  // EFFECT: updates farthest and depth
+  int farthestFrom(int[] conn, int start) {
+    this.begin();
+    this.seed(start);
+    return this.run(conn);
+  }
+
+  // EFFECT: starts a new search, forgetting every visited cell without clearing
+  void begin() {
+    this.epoch = this.epoch + 1;
+    if (this.epoch == Integer.MAX_VALUE) {
+      java.util.Arrays.fill(this.visited, 0);
+      this.epoch = 1;
+    }
+    this.tail = 0;
+  }
+
+  // EFFECT: marks the given cell as visited so this search never enters it
+  void exclude(int cell) {
+    this.visited[cell] = this.epoch;
+  }
+
+  // EFFECT: adds the given cell to the first level of this search
+  void seed(int cell) {
+    if (this.visited[cell] != this.epoch) {
+      this.visited[cell] = this.epoch;
+      this.queue[this.tail] = cell;
+      this.tail = this.tail + 1;
+    }
+  }
+
+  // to return the last cell reached, level by level, from the seeded cells
+  // Neighbors are visited top, left, bottom, right, the order findDeepest always used
+  // EFFECT: updates farthest and depth
+  int run(int[] conn) {
+    int head = 0;
+    int levelEnd = this.tail;
+    this.depth = 0;
+    while (head < this.tail) {
+      int cell = this.queue[head];
+      int mask = conn[cell];
+      head = head + 1;
+      this.farthest = cell;
+      if ((mask & GamePiece.TOP) != 0) {
+        this.seed(cell - 1);
+      }
+      if ((mask & GamePiece.LEFT) != 0) {
+        this.seed(cell - this.height);
+      }
+      if ((mask & GamePiece.BOTTOM) != 0) {
+        this.seed(cell + 1);
+      }
+      if ((mask & GamePiece.RIGHT) != 0) {
+        this.seed(cell + this.height);
+      }
+      if (head == levelEnd && head < this.tail) {
+        this.depth = this.depth + 1;
+        levelEnd = this.tail;
+      }
+    }
+    return this.farthest;
+  }
+}
+
+// to represent the diameter of the GamePieces connected to the powerStation, kept up to
+// date as rotations link and cut wires. On a tree, the cell farthest from any cell is an
+// end of a longest path, so the distances from both ends of the current one are enough to
+// tell whether the cells a rotation reconnected make it longer. Only when an end is cut off,
+// or a path longer than the current one appears, are the connected cells searched again
+class DiameterTracker {
+  // height of the board, to step between columns
+  int height;
+  // a cell is connected to the powerStation if its member stamp equals epoch
+  int[] member;
+  int epoch;
+  // the ends of the longest path and the distance of every connected cell from each of them,
+  // valid while the connected cells form a tree
+  int from;
+  int to;
+  int[] fromDist;
+  int[] toDist;
+  // the length of the longest path, and the number of connected cells and of their wire ends
+  int length;
+  int size;
+  long ends;
+  // do the connected cells form a tree? If not, length is the depth of a double search
+  boolean tree;
+  // cells waiting to be visited by a search
+  int[] queue;
+  // the cell last rotated and its neighbors, with their connections before the rotation
+  int[] around;
+  int[] before;
+  // the number of searches over every connected cell so far
+  int rebuilds;
+  // the value of BoardStore.version the longest path is known for, or -1 before the first
+  // search
+  int version;
+  // the search under way: the dist array it fills, whether it marks the connected cells,
+  // the cell it starts from, how many cells of dist it has reset so far, the cells of queue
+  // in [head, tail) left to visit and the last cell it visited
+  int[] dist;
+  boolean mark;
+  int start;
+  int cleared;
+  int head;
+  int tail;
+  int last;
+  // which of the three searches of a rebuild is under way, from 1 to 3, or 0 when none is
+  int step;
+  // the value of BoardStore.version the rebuild under way is for
+  int building;
+
+  // Constructor for a DiameterTracker over a board of the given dimensions, not built yet
+  DiameterTracker(int width, int height) {
+    this.height = height;
+    this.member = new int[width * height];
+    this.epoch = 0;
+    this.fromDist = new int[width * height];
+    this.toDist = new int[width * height];
+    this.queue = new int[width * height];
+    this.around = new int[5];
+    this.before = new int[5];
+    this.rebuilds = 0;
+    this.version = -1;
+    this.step = 0;
+  }
+
+  // to return the effective radius of the powerStation for the current longest path
+  int radius() {
+    return this.length / 2 + 1;
+  }
+
+  // to return the index of the cell next to the given one in the given direction, or -1 if
+  // it is off the board
+  int neighbor(int cell, int dir) {
+    int row = cell % this.height;
+    if (dir == GamePiece.TOP) {
+      return row > 0 ? cell - 1 : -1;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return row < this.height - 1 ? cell + 1 : -1;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return cell + this.height < this.member.length ? cell + this.height : -1;
+    }
+    else {
+      return cell >= this.height ? cell - this.height : -1;
+    }
+  }
+
+  // to return the last cell reached by a search from the given cell over its wires
+  // EFFECT: records the distance of each reached cell in dist, and when mark is set makes
+  // them the connected cells, counting them and their wire ends
+  int search(int[] conn, int start, int[] dist, boolean mark) {
+    this.beginSearch(start, dist, mark);
+    this.resumeSearch(conn, Long.MAX_VALUE);
+    return this.last;
+  }
+
+  // EFFECT: begins the search of search(), to be carried on by resumeSearch()
+  void beginSearch(int start, int[] dist, boolean mark) {
+    if (mark) {
+      this.epoch = this.epoch + 1;
+      if (this.epoch == Integer.MAX_VALUE) {
+        Arrays.fill(this.member, 0);
+        this.epoch = 1;
+      }
+      this.size = 0;
+      this.ends = 0;
+    }
+    this.dist = dist;
+    this.mark = mark;
+    this.start = start;
+    this.cleared = 0;
+    this.head = 0;
+    this.tail = 0;
+  }
+
+  // to return whether the search under way is finished
+  // EFFECT: resets its dist array and then visits cells until System.nanoTime() passes the
+  // given deadline, looking at the clock every PowerEngine.SLICE cells
+  boolean resumeSearch(int[] conn, long deadline) {
+    int[] dist = this.dist;
+    // cells not yet reached by this search have a distance of -1
+    while (this.cleared < dist.length) {
+      int end = Math.min(this.cleared + 16 * PowerEngine.SLICE, dist.length);
+      Arrays.fill(dist, this.cleared, end, -1);
+      this.cleared = end;
+      if (end == dist.length) {
+        this.queue[0] = this.start;
+        dist[this.start] = 0;
+        this.last = this.start;
+        this.tail = 1;
+      }
+      else if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+        return false;
+      }
+    }
+    int left = PowerEngine.SLICE;
+    while (this.head < this.tail) {
+      if (left == 0) {
+        if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+          return false;
+        }
+        left = PowerEngine.SLICE;
+      }
+      left = left - 1;
+      int cell = this.queue[this.head];
+      this.head = this.head + 1;
+      this.last = cell;
+      int mask = conn[cell];
+      if (this.mark) {
+        this.member[cell] = this.epoch;
+        this.size = this.size + 1;
+        this.ends = this.ends + Integer.bitCount(mask);
+      }
+      // neighbors are visited top, left, bottom, right, as DiameterEngine does, so a board
+      // with loops ends at the same cell as findRadius()
+      if ((mask & GamePiece.TOP) != 0) {
+        this.tail = this.enqueue(cell - 1, dist[cell] + 1, dist, this.tail);
+      }
+      if ((mask & GamePiece.LEFT) != 0) {
+        this.tail = this.enqueue(cell - this.height, dist[cell] + 1, dist, this.tail);
+      }
+      if ((mask & GamePiece.BOTTOM) != 0) {
+        this.tail = this.enqueue(cell + 1, dist[cell] + 1, dist, this.tail);
+      }
+      if ((mask & GamePiece.RIGHT) != 0) {
+        this.tail = this.enqueue(cell + this.height, dist[cell] + 1, dist, this.tail);
+      }
+    }
+    return true;
+  }
+
+  // to return the end of the search queue after adding the given cell at the given distance,
+  // unless it was reached already
+  int enqueue(int cell, int distance, int[] dist, int tail) {
+    if (dist[cell] >= 0) {
+      return tail;
+    }
+    dist[cell] = distance;
+    this.queue[tail] = cell;
+    return tail + 1;
+  }
+
+  // EFFECT: searches the cells connected to the given station for the ends of their longest
+  // path and the distances from them, for the given version of the connections
+  void rebuild(int[] conn, int station, int version) {
+    this.begin(station, version);
+    this.resume(conn, Long.MAX_VALUE);
+  }
+
+  // EFFECT: begins the searches of rebuild(), to be carried on by resume(); the longest path
+  // stays unknown until they finish
+  void begin(int station, int version) {
+    this.rebuilds = this.rebuilds + 1;
+    this.building = version;
+    this.version = -1;
+    this.step = 1;
+    this.beginSearch(station, this.toDist, true);
+  }
+
+  // to return whether the searches of the rebuild under way are finished
+  // EFFECT: carries them on, one after another, until System.nanoTime() passes the given
+  // deadline
+  boolean resume(int[] conn, long deadline) {
+    while (this.step > 0) {
+      if (!this.resumeSearch(conn, deadline)) {
+        return false;
+      }
+      if (this.step == 1) {
+        this.from = this.last;
+        this.tree = this.ends == 2L * (this.size - 1);
+        this.step = 2;
+        this.beginSearch(this.from, this.fromDist, false);
+      }
+      else if (this.step == 2) {
+        this.to = this.last;
+        this.length = this.fromDist[this.to];
+        this.step = 3;
+        this.beginSearch(this.to, this.toDist, false);
+      }
+      else {
+        this.step = 0;
+        this.version = this.building;
+      }
+    }
+    return true;
+  }
+
+  // EFFECT: remembers the connections of the given cell and its neighbors before it rotates
+  void remember(int[] conn, int cell) {
+    this.around[0] = cell;
+    this.before[0] = conn[cell];
+    for (int i = 1; i <= 4; i++) {
+      int next = this.neighbor(cell, 1 << (i - 1));
+      this.around[i] = next;
+      this.before[i] = next >= 0 ? conn[next] : 0;
+    }
+  }
+
+  // to return whether the longest path changed length after the remembered cell rotated into
+  // the given version of the connections, and the given PowerEngine repaired its distances
+  // from the given station
+  // EFFECT: updates the connected cells, the ends and their distances
+  boolean rotated(int[] conn, PowerEngine power, int station, int version) {
+    int old = this.length;
+    this.version = version;
+    IndexList changed = power.changed;
+    boolean near = changed.size() > 0;
+    for (int i = 0; i < 5; i++) {
+      near = near || (this.around[i] >= 0 && this.member[this.around[i]] == this.epoch);
+    }
+    if (!near) {
+      return false;
+    }
+    // wires of connected cells that kept their distance
+    for (int i = 0; i < 5; i++) {
+      int cell = this.around[i];
+      if (cell >= 0 && this.member[cell] == this.epoch && power.stamp[cell] != power.epoch) {
+        this.ends = this.ends + Integer.bitCount(conn[cell]) - Integer.bitCount(this.before[i]);
+      }
+    }
+    // cells that left or moved within the connected ones
+    boolean endMoved = false;
+    for (int i = 0; i < changed.size(); i++) {
+      int cell = changed.get(i);
+      this.fromDist[cell] = -1;
+      this.toDist[cell] = -1;
+      if (this.member[cell] == this.epoch) {
+        endMoved = endMoved || cell == this.from || cell == this.to;
+        this.member[cell] = 0;
+        this.size = this.size - 1;
+        this.ends = this.ends - Integer.bitCount(this.maskBefore(conn, cell));
+      }
+    }
+    for (int i = 0; i < changed.size(); i++) {
+      int cell = changed.get(i);
+      if (power.reached.contains(cell)) {
+        this.member[cell] = this.epoch;
+        this.size = this.size + 1;
+        this.ends = this.ends + Integer.bitCount(conn[cell]);
+      }
+    }
+    if (endMoved || !this.tree || this.ends != 2L * (this.size - 1)) {
+      this.rebuild(conn, station, version);
+      return this.length != old;
+    }
+    // the distances of cells hanging below the moved ones follow from their parents
+    int farthestFrom = this.from;
+    int farthestTo = this.to;
+    for (int i = 0; i < changed.size(); i++) {
+      int cell = changed.get(i);
+      if (power.reached.contains(cell)) {
+        this.reach(power, cell);
+        if (this.fromDist[cell] > this.fromDist[farthestFrom]) {
+          farthestFrom = cell;
+        }
+        if (this.toDist[cell] > this.toDist[farthestTo]) {
+          farthestTo = cell;
+        }
+      }
+    }
+    if (this.fromDist[farthestFrom] > this.length) {
+      // the farthest cell from one end is an end of a longer path; the other is not known
+      this.rebuild(conn, station, version);
+    }
+    else if (this.toDist[farthestTo] > this.length) {
+      // the old end from stays farthest from to, so to and the new cell span the longest path
+      int[] swap = this.fromDist;
+      this.fromDist = this.toDist;
+      this.toDist = swap;
+      this.from = this.to;
+      this.to = farthestTo;
+      this.length = this.fromDist[this.to];
+      this.search(conn, this.to, this.toDist, false);
+    }
+    return this.length != old;
+  }
+
+  // to return the connections the given cell had before the remembered rotation
+  int maskBefore(int[] conn, int cell) {
+    for (int i = 0; i < 5; i++) {
+      if (this.around[i] == cell) {
+        return this.before[i];
+      }
+    }
+    return conn[cell];
+  }
+
+  // EFFECT: sets the distances of the given moved cell from both ends, through its parent,
+  // setting those of moved parents first
+  void reach(PowerEngine power, int cell) {
+    int depth = 0;
+    int up = cell;
+    while (power.stamp[up] == power.epoch && this.fromDist[up] < 0) {
+      this.queue[depth] = up;
+      depth = depth + 1;
+      up = power.parent[up];
+    }
+    for (int i = depth - 1; i >= 0; i--) {
+      int next = this.queue[i];
+      int parent = power.parent[next];
+      this.fromDist[next] = this.fromDist[parent] + 1;
+      this.toDist[next] = this.toDist[parent] + 1;
+    }
+  }
+}
+
+// to represent an iterative BFS that carries power from the powerStation through the
+// connections of a board, indexed like LightEmAll.nodes
+// After a full flood, rotated() repairs the distances around a single rotated cell
+class PowerEngine {
+  // cells visited by resume() between two looks at the clock
+  static final int SLICE = 1024;
+  // height of the board, to step between columns
+  int height;
+  // cells waiting to be visited by a flood; a flood begun by begin() has [head, tail) left
+  int[] queue;
+  int head;
+  int tail;
+  // is a flood begun by begin() still under way?
+  boolean flooding;
+  // the cells reached before the last begin(), made on first use; the caller has dimmed
+  // those before dimmed already
+  IndexSet fading;
+  int dimmed;
+  // distance of each cell from the powerStation and the cell it was reached from,
+  // valid for the cells in reached
+  int[] dist;
+  int[] parent;
+  // the cells connected to the powerStation
+  IndexSet reached;
+  // the cells within the radius
+  IndexSet powered;
+  // effective radius of the last flood
+  int radius;
+  // the cells whose distance may have changed during the last rotated()
+  IndexList changed;
+  // a cell was touched by the current rotated() if its stamp equals epoch
+  int[] stamp;
+  int epoch;
+  // candidate distances still to be settled by rotated()
+  IntHeap heap;
+  // the reached cells in depth-first order over the parents of the flood that made the
+  // tour, made on first use: the subtree under a cell covers order[first[cell]..last[cell]]
+  int[] order;
+  int[] first;
+  int[] last;
+  // the number of cells in order
+  int tourLength;
+  // is order the tour of the current connections, and do the cells in it form a tree?
+  boolean current;
+  boolean tree;
+  // the power gradient bucket of each distance up to radius + 1, as of the last reroot()
+  int[] buckets;
+  // scratch planes for floodBits(), made on first use: the current frontier, the cells
+  // reached by the next level and every cell seen so far
+  long[] front;
+  long[] next;
+  long[] seen;
+  // the words of the current and next frontier; a word is listed in the next one once,
+  // when its listed stamp equals level
+  int[] active;
+  int[] upcoming;
+  int[] listed;
+
+  // Constructor for a PowerEngine over a board of the given dimensions
+  PowerEngine(int width, int height) {
+    this.height = height;
+    this.queue = new int[width * height];
+    this.dist = new int[width * height];
+    this.parent = new int[width * height];
+    this.reached = new IndexSet(width * height);
+    this.powered = new IndexSet(width * height);
+    this.changed = new IndexList(16);
+    this.stamp = new int[width * height];
+    this.epoch = 0;
+    this.heap = new IntHeap(16);
+    this.current = false;
+    this.flooding = false;
+    this.dimmed = 0;
+  }
+
+  // EFFECT: floods power from the given station cell, recording the distance of every
+  // connected cell and which of them are within the given radius
+  void flood(int[] conn, int station, int radius) {
+    this.clear();
+    this.start(station, radius);
+    this.resume(conn, Long.MAX_VALUE);
+  }
+
+  // EFFECT: begins a flood like flood() that has reached only the given station so far, for
+  // resume() to carry on. The cells reached before are left in fading for the caller to dim
+  void begin(int station, int radius) {
+    if (this.fading == null) {
+      this.fading = new IndexSet(this.dist.length);
+    }
+    if (this.dimmed < this.fading.size()) {
+      // an earlier flood's cells are not all dimmed yet: this one's join them, and since
+      // some of those were dimmed before this flood lit them, dimming starts over
+      for (int i = 0; i < this.reached.size(); i++) {
+        this.fading.add(this.reached.get(i));
+      }
+    }
+    else {
+      IndexSet left = this.reached;
+      this.reached = this.fading;
+      this.fading = left;
+    }
+    this.dimmed = 0;
+    this.clear();
+    this.start(station, radius);
+  }
+
+  // EFFECT: reaches the given station with the given radius and queues it to be visited
+  void start(int station, int radius) {
+    this.radius = radius;
+    this.reach(station, 0, -1);
+    this.queue[0] = station;
+    this.head = 0;
+    this.tail = 1;
+    this.flooding = true;
+  }
+
+  // to return whether the flood is finished after visiting queued cells, reaching their
+  // neighbors, until none are left or System.nanoTime() passes the given deadline. The
+  // clock is read every SLICE cells, so each call visits at least that many
+  boolean resume(int[] conn, long deadline) {
+    int head = this.head;
+    int tail = this.tail;
+    int slice = SLICE;
+    while (head < tail) {
+      int cell = this.queue[head];
+      int mask = conn[cell];
+      int next = this.dist[cell] + 1;
+      head = head + 1;
+      if ((mask & GamePiece.TOP) != 0 && this.reach(cell - 1, next, cell)) {
+        this.queue[tail] = cell - 1;
+        tail = tail + 1;
+      }
+      if ((mask & GamePiece.RIGHT) != 0 && this.reach(cell + this.height, next, cell)) {
+        this.queue[tail] = cell + this.height;
+        tail = tail + 1;
+      }
+      if ((mask & GamePiece.BOTTOM) != 0 && this.reach(cell + 1, next, cell)) {
+        this.queue[tail] = cell + 1;
+        tail = tail + 1;
+      }
+      if ((mask & GamePiece.LEFT) != 0 && this.reach(cell - this.height, next, cell)) {
+        this.queue[tail] = cell - this.height;
+        tail = tail + 1;
+      }
+      slice = slice - 1;
+      if (slice == 0) {
+        if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+          break;
+        }
+        slice = SLICE;
+      }
+    }
+    this.head = head;
+    this.tail = tail;
+    this.flooding = head < tail;
+    return !this.flooding;
+  }
+
+  // is the last flood finished, with every cell reached before it dimmed?
+  boolean settled() {
+    return !this.flooding && (this.fading == null || this.dimmed >= this.fading.size());
+  }
+
+  // EFFECT: floods power like flood(), one BFS level at a time over the connection planes
+  // of the given BitBoard. Every level spreads the frontier through all four directions
+  // with shifts and masks, 64 cells per word, visiting only the words around the frontier.
+  // Cells farther than maxDepth are left unreached; with no limit the distances and power
+  // are the same as flood()'s
+  void floodBits(BitBoard bits, int station, int radius, int maxDepth) {
+    this.clear();
+    this.radius = radius;
+    int words = bits.height * bits.stride;
+    if (this.seen == null || this.seen.length != words) {
+      this.front = new long[words];
+      this.next = new long[words];
+      this.seen = new long[words];
+      this.active = new int[words];
+      this.upcoming = new int[words];
+      this.listed = new int[words];
+    }
+    Arrays.fill(this.seen, 0);
+    Arrays.fill(this.listed, -1);
+    int col = station / this.height;
+    int start = (station % this.height) * bits.stride + (col >>> 6);
+    this.front[start] = 1L << (col & 63);
+    this.seen[start] = this.front[start];
+    this.active[0] = start;
+    int count = 1;
+    this.reach(station, 0, -1);
+    int level = 0;
+    while (count > 0 && level < maxDepth) {
+      level = level + 1;
+      int upcomingCount = 0;
+      // spread every frontier word into the words of its neighbors
+      for (int k = 0; k < count; k++) {
+        int i = this.active[k];
+        int w = i % bits.stride;
+        long f = this.front[i];
+        this.front[i] = 0;
+        long up = f & bits.links[0][i];
+        long right = f & bits.links[1][i];
+        long down = f & bits.links[2][i];
+        long left = f & bits.links[3][i];
+        if (up != 0) {
+          upcomingCount = this.spread(i - bits.stride, up, level, upcomingCount);
+        }
+        if (down != 0) {
+          upcomingCount = this.spread(i + bits.stride, down, level, upcomingCount);
+        }
+        if ((right << 1 | left >>> 1) != 0) {
+          upcomingCount = this.spread(i, right << 1 | left >>> 1, level, upcomingCount);
+        }
+        if ((right >>> 63) != 0 && w + 1 < bits.stride) {
+          upcomingCount = this.spread(i + 1, 1L, level, upcomingCount);
+        }
+        if ((left & 1) != 0 && w > 0) {
+          upcomingCount = this.spread(i - 1, 1L << 63, level, upcomingCount);
+        }
+      }
+      // keep the cells not seen before as the next frontier, recording their distance
+      count = 0;
+      for (int k = 0; k < upcomingCount; k++) {
+        int i = this.upcoming[k];
+        long fresh = this.next[i] & ~this.seen[i];
+        this.next[i] = 0;
+        if (fresh != 0) {
+          this.seen[i] = this.seen[i] | fresh;
+          this.front[i] = fresh;
+          this.active[count] = i;
+          count = count + 1;
+          int row = i / bits.stride;
+          int first = (i % bits.stride) * 64;
+          while (fresh != 0) {
+            int cell = (first + Long.numberOfTrailingZeros(fresh)) * this.height + row;
+            fresh = fresh & (fresh - 1);
+            this.reach(cell, level, this.parentOf(bits, cell, level - 1));
+          }
+        }
+      }
+    }
+    for (int k = 0; k < count; k++) {
+      this.front[this.active[k]] = 0;
+    }
+  }
+
+  // to return the number of words listed for the next frontier, counting the given word
+  // EFFECT: adds the given bits to the next frontier
+  int spread(int word, long bits, int level, int upcomingCount) {
+    this.next[word] = this.next[word] | bits;
+    if (this.listed[word] == level) {
+      return upcomingCount;
+    }
+    this.listed[word] = level;
+    this.upcoming[upcomingCount] = word;
+    return upcomingCount + 1;
+  }
+
+  // to return a neighbor of the given cell connected to it at the given distance
+  int parentOf(BitBoard bits, int cell, int distance) {
+    int mask = bits.maskAt(bits.links, (cell % this.height) * bits.stride
+            + (cell / this.height >>> 6), cell / this.height & 63);
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+      int other = this.neighbor(cell, dir);
+      if ((mask & dir) != 0 && this.reached.contains(other) && this.dist[other] == distance) {
+        return other;
+      }
+    }
+    return -1;
+  }
+
+  // to return whether the given cell was reached for the first time
+  // EFFECT: records the cell at the given distance, coming from the given parent
+  boolean reach(int cell, int distance, int from) {
+    if (this.reached.contains(cell)) {
+      return false;
+    }
+    this.reached.add(cell);
+    this.dist[cell] = distance;
+    this.parent[cell] = from;
+    if (distance <= this.radius) {
+      this.powered.add(cell);
+    }
+    return true;
+  }
+
+  // EFFECT: repairs distances and power after the connections of the given cell changed
+  // from oldMask to conn[cell]. Only the subtrees cut off by removed connections and the
+  // cells that get closer through added connections are visited; changed lists them all
+  void rotated(int[] conn, int cell, int oldMask) {
+    int newMask = conn[cell];
+    int removed = oldMask & ~newMask;
+    int added = newMask & ~oldMask;
+    this.epoch = this.epoch + 1;
+    if (this.epoch == Integer.MAX_VALUE) {
+      java.util.Arrays.fill(this.stamp, 0);
+      this.epoch = 1;
+    }
+    this.changed.clear();
+    this.heap.clear();
+    this.current = false;
+    // Step 1: cut off the subtrees that hung from a removed connection
+    int orphans = 0;
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+      if ((removed & dir) != 0) {
+        int other = this.neighbor(cell, dir);
+        if (this.reached.contains(other) && this.parent[other] == cell) {
+          orphans = this.detach(other, orphans);
+        }
+        else if (this.reached.contains(cell) && this.parent[cell] == other) {
+          orphans = this.detach(cell, orphans);
+        }
+      }
+    }
+    // Step 2: offer every cut off cell its best distance through a cell that kept power
+    for (int i = 0; i < orphans; i++) {
+      int orphan = this.queue[i];
+      int mask = conn[orphan];
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+        int other = this.neighbor(orphan, dir);
+        if ((mask & dir) != 0 && this.reached.contains(other)) {
+          this.offer(orphan, this.dist[other] + 1, other);
+        }
+      }
+    }
+    // Step 3: offer both ends of every added connection a path through the other end
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+      if ((added & dir) != 0) {
+        int other = this.neighbor(cell, dir);
+        if (this.reached.contains(cell)) {
+          this.offer(other, this.dist[cell] + 1, cell);
+        }
+        if (this.reached.contains(other)) {
+          this.offer(cell, this.dist[other] + 1, other);
+        }
+      }
+    }
+    // Step 4: settle the offers closest first, passing improvements along
+    while (this.heap.size > 0) {
+      int distance = this.heap.minKey();
+      int next = this.heap.minValue();
+      this.heap.pop();
+      if (this.dist[next] == distance && this.reached.contains(next)) {
+        int mask = conn[next];
+        for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+          if ((mask & dir) != 0) {
+            this.offer(this.neighbor(next, dir), distance + 1, next);
+          }
+        }
+      }
+    }
+  }
+
+  // to return the number of cut off cells, now including the subtree under the given cell
+  // EFFECT: disconnects the subtree, queueing its cells in queue[orphans...]
+  int detach(int root, int orphans) {
+    int head = orphans;
+    int tail = orphans;
+    this.touch(root);
+    this.unreach(root);
+    this.queue[tail] = root;
+    tail = tail + 1;
+    while (head < tail) {
+      int current = this.queue[head];
+      head = head + 1;
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+        int child = this.neighbor(current, dir);
+        if (child >= 0 && child < this.dist.length
+                && this.reached.contains(child) && this.parent[child] == current) {
+          this.touch(child);
+          this.unreach(child);
+          this.queue[tail] = child;
+          tail = tail + 1;
+        }
+      }
+    }
+    return tail;
+  }
+
+  // EFFECT: records the given distance for the given cell if it is shorter than its own
+  void offer(int cell, int distance, int from) {
+    if (!this.reached.contains(cell) || distance < this.dist[cell]) {
+      this.touch(cell);
+      this.unreach(cell);
+      this.reach(cell, distance, from);
+      this.heap.push(distance, cell);
+    }
+  }
+
+  // EFFECT: removes the power data of the given cell
+  void unreach(int cell) {
+    this.reached.remove(cell);
+    this.powered.remove(cell);
+  }
+
+  // EFFECT: lists the given cell in changed the first time it is touched by rotated()
+  void touch(int cell) {
+    if (this.stamp[cell] != this.epoch) {
+      this.stamp[cell] = this.epoch;
+      this.changed.add(cell);
+    }
+  }
+
+  // to return the index of the cell next to the given one in the given direction
+  // NOTE: only meaningful when the cell is wired in that direction
+  int neighbor(int cell, int dir) {
+    if (dir == GamePiece.TOP) {
+      return cell - 1;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return cell + this.height;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return cell + 1;
+    }
+    else {
+      return cell - this.height;
+    }
+  }
+
+  // EFFECT: forgets the last flood without clearing any array
+  void clear() {
+    this.reached.clear();
+    this.powered.clear();
+    this.current = false;
+    this.flooding = false;
+  }
+
+  // EFFECT: lists the reached cells in depth-first order from the given root, following
+  // the parents of the last flood, with the range of order each subtree covers, and
+  // records whether the connections between them form a tree
+  void tour(int[] conn, int root) {
+    if (this.order == null) {
+      this.order = new int[this.dist.length];
+      this.first = new int[this.dist.length];
+      this.last = new int[this.dist.length];
+    }
+    int size = 0;
+    int top = 1;
+    long ends = 0;
+    this.queue[0] = root;
+    while (top > 0) {
+      top = top - 1;
+      int cell = this.queue[top];
+      int mask = conn[cell];
+      this.order[size] = cell;
+      this.first[cell] = size;
+      this.last[cell] = 1;
+      size = size + 1;
+      ends = ends + Integer.bitCount(mask);
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+        if ((mask & dir) != 0) {
+          int child = this.neighbor(cell, dir);
+          if (this.parent[child] == cell && this.reached.contains(child)) {
+            this.queue[top] = child;
+            top = top + 1;
+          }
+        }
+      }
+    }
+    // subtree sizes add up from the end of the order, where the deepest cells are
+    for (int i = size - 1; i > 0; i--) {
+      int cell = this.order[i];
+      this.last[this.parent[cell]] = this.last[this.parent[cell]] + this.last[cell];
+    }
+    for (int i = 0; i < size; i++) {
+      int cell = this.order[i];
+      this.last[cell] = i + this.last[cell] - 1;
+    }
+    this.tourLength = size;
+    this.current = true;
+    this.tree = ends == 2L * (size - 1);
+  }
+
+  // to return whether the powerStation could be moved from the given cell to the given
+  // neighbor wired to it by shifting distances, which needs the last flood to have come
+  // from there and the cells it reached to form a tree. Then the cells on the neighbor's
+  // side of their wire get one closer and all others one farther, and only the cells
+  // crossing the radius change power
+  // EFFECT: updates distances, parents and power, listing in changed the cells whose
+  // power gradient bucket changed; the tour is made on the first move after a flood or
+  // rotation
+  boolean reroot(int[] conn, int from, int to) {
+    if (!this.reached.contains(from) || this.dist[from] != 0) {
+      return false;
+    }
+    if (!this.current) {
+      this.tour(conn, from);
+    }
+    if (!this.tree) {
+      return false;
+    }
+    if (this.buckets == null || this.buckets.length != this.radius + 2) {
+      this.buckets = new int[this.radius + 2];
+      for (int d = 0; d < this.buckets.length; d++) {
+        this.buckets[d] = GamePiece.bucketOf(d, this.radius);
+      }
+    }
+    this.changed.clear();
+    if (this.first[from] <= this.first[to] && this.first[to] <= this.last[from]) {
+      // the neighbor hangs below: its subtree gets closer
+      this.shift(0, this.first[to], 1);
+      this.shift(this.first[to], this.last[to] + 1, -1);
+      this.shift(this.last[to] + 1, this.tourLength, 1);
+    }
+    else {
+      // the neighbor is above: everything but the old station's subtree gets closer
+      this.shift(0, this.first[from], -1);
+      this.shift(this.first[from], this.last[from] + 1, 1);
+      this.shift(this.last[from] + 1, this.tourLength, -1);
+    }
+    this.parent[from] = to;
+    this.parent[to] = -1;
+    return true;
+  }
+
+  // EFFECT: adds delta, 1 or -1, to the distances of the cells in order[lo..hi), powering or
+  // unpowering the ones crossing the radius and listing in changed the ones whose power
+  // gradient bucket changed
+  void shift(int lo, int hi, int delta) {
+    int edge = this.radius + 1;
+    for (int i = lo; i < hi; i++) {
+      int cell = this.order[i];
+      int old = this.dist[cell];
+      int distance = old + delta;
+      this.dist[cell] = distance;
+      if (distance == edge && delta > 0) {
+        this.powered.remove(cell);
+      }
+      else if (distance == this.radius && delta < 0) {
+        this.powered.add(cell);
+      }
+      if (this.buckets[Math.min(old, edge)] != this.buckets[Math.min(distance, edge)]) {
+        this.changed.add(cell);
+      }
+    }
+  }
+
+  // to return the distance of the given cell from the powerStation, if connected
+  int distOf(int cell) {
+    if (this.reached.contains(cell)) {
+      return this.dist[cell];
+    }
+    else {
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  // is the given cell within the radius of the last flood?
+  boolean isPowered(int cell) {
+    return this.powered.contains(cell);
+  }
+
+  // EFFECT: records by hand the given distance of the given cell from the powerStation, as
+  // a GamePiece does, leaving the tour stale; Integer.MAX_VALUE leaves the cell unreached
+  void setDist(int cell, int distance) {
+    this.current = false;
+    if (distance == Integer.MAX_VALUE) {
+      this.reached.remove(cell);
+    }
+    else {
+      this.reached.add(cell);
+      this.dist[cell] = distance;
+      this.parent[cell] = -1;
+    }
+  }
+
+  // EFFECT: records by hand whether the given cell is within the radius, as a GamePiece does
+  void setPowered(int cell, boolean on) {
+    if (on) {
+      this.powered.add(cell);
+    }
+    else {
+      this.powered.remove(cell);
+    }
+  }
+}
+
+// to represent the distances along the wires between any two cells of a board. Each
+// component is toured depth first, listing a cell every time the tour passes through it;
+// on a tree, the cells between the first visits of two cells reach up to their common
+// ancestor and no higher, so the shallowest of them gives the distance. It is found in
+// constant time from a sparse table over blocks of the tour and a scan of the two blocks at
+// the ends. Components with loops are answered by a search instead
+class DistanceOracle {
+  // the number of tour positions each entry of the first level of table covers
+  static final int BLOCK = 16;
+  // height of the board, to step between columns
+  int height;
+  // the value of BoardStore.version the tour was built at, or -1 before the first build
+  int version;
+  // the first cell of the component of each cell, where its tour starts, and the distance
+  // of each cell from it along the tour's tree
+  int[] root;
+  int[] depth;
+  // the position of the first visit of each cell in tour
+  int[] seen;
+  // the cells in the order the tour passes through them, length of them
+  int[] tour;
+  int length;
+  // are the connections of the component starting at each root a tree?
+  boolean[] tree;
+  // table[k][b] is the position of the shallowest cell in the 2^k blocks from block b
+  int[][] table;
+  // the cells of the tour still being walked and the next direction each of them tries
+  int[] stack;
+  int[] tries;
+  // scratch for searches on components with loops, made on first use: the cells to visit,
+  // their distances, and whether a cell was reached, when its stamp equals epoch
+  int[] queue;
+  int[] dist;
+  int[] stamp;
+  int epoch;
+
+  // Constructor for a DistanceOracle over a board of the given dimensions, not built yet
+  DistanceOracle(int width, int height) {
+    int cells = width * height;
+    this.height = height;
+    this.version = -1;
+    this.root = new int[cells];
+    this.depth = new int[cells];
+    this.seen = new int[cells];
+    this.tour = new int[2 * cells];
+    this.tree = new boolean[cells];
+    this.stack = new int[cells];
+    this.tries = new int[cells];
+    this.epoch = 0;
+  }
+
+  // EFFECT: tours every component of the given connections and indexes the tour, as of the
+  // given version of them
+  void build(int[] conn, int version) {
+    Arrays.fill(this.seen, -1);
+    this.length = 0;
+    for (int cell = 0; cell < this.root.length; cell++) {
+      if (this.seen[cell] < 0) {
+        this.tourFrom(conn, cell);
+      }
+    }
+    int blocks = (this.length + BLOCK - 1) / BLOCK;
+    int levels = 32 - Integer.numberOfLeadingZeros(blocks);
+    this.table = new int[levels][];
+    this.table[0] = new int[blocks];
+    for (int b = 0; b < blocks; b++) {
+      this.table[0][b] = this.scan(b * BLOCK, Math.min(this.length, b * BLOCK + BLOCK) - 1);
+    }
+    for (int k = 1; k < levels; k++) {
+      int span = 1 << (k - 1);
+      this.table[k] = new int[blocks - 2 * span + 1];
+      for (int b = 0; b < this.table[k].length; b++) {
+        this.table[k][b] = this.shallower(this.table[k - 1][b], this.table[k - 1][b + span]);
+      }
+    }
+    this.version = version;
+  }
+
+  // EFFECT: appends to tour the component of the given root, walking its wires depth first
+  // without recursion, and records whether they form a tree
+  void tourFrom(int[] conn, int start) {
+    long ends = Integer.bitCount(conn[start]);
+    int size = 1;
+    int top = 0;
+    this.visit(start, start, 0);
+    this.stack[0] = start;
+    this.tries[0] = 0;
+    while (top >= 0) {
+      int cell = this.stack[top];
+      int next = -1;
+      while (next < 0 && this.tries[top] < 4) {
+        int dir = 1 << this.tries[top];
+        this.tries[top] = this.tries[top] + 1;
+        if ((conn[cell] & dir) != 0 && this.seen[this.neighbor(cell, dir)] < 0) {
+          next = this.neighbor(cell, dir);
+        }
+      }
+      if (next >= 0) {
+        this.visit(next, start, this.depth[cell] + 1);
+        ends = ends + Integer.bitCount(conn[next]);
+        size = size + 1;
+        top = top + 1;
+        this.stack[top] = next;
+        this.tries[top] = 0;
+      }
+      else {
+        top = top - 1;
+        if (top >= 0) {
+          this.tour[this.length] = this.stack[top];
+          this.length = this.length + 1;
+        }
+      }
+    }
+    this.tree[start] = ends == 2L * (size - 1);
+  }
+
+  // EFFECT: lists the given cell in tour for the first time
+  void visit(int cell, int start, int depth) {
+    this.root[cell] = start;
+    this.depth[cell] = depth;
+    this.seen[cell] = this.length;
+    this.tour[this.length] = cell;
+    this.length = this.length + 1;
+  }
+
+  // to return the index of the cell next to the given one in the given direction
+  // NOTE: only meaningful when the cell is wired in that direction
+  int neighbor(int cell, int dir) {
+    if (dir == GamePiece.TOP) {
+      return cell - 1;
+    }
+    else if (dir == GamePiece.RIGHT) {
+      return cell + this.height;
+    }
+    else if (dir == GamePiece.BOTTOM) {
+      return cell + 1;
+    }
+    else {
+      return cell - this.height;
+    }
+  }
+
+  // to return whichever of the two tour positions holds the shallower cell
+  int shallower(int i, int j) {
+    if (this.depth[this.tour[j]] < this.depth[this.tour[i]]) {
+      return j;
+    }
+    return i;
+  }
+
+  // to return the position of the shallowest cell in tour[from..to], one by one
+  int scan(int from, int to) {
+    int best = from;
+    for (int i = from + 1; i <= to; i++) {
+      best = this.shallower(best, i);
+    }
+    return best;
+  }
+
+  // to return the position of the shallowest cell in tour[from..to]
+  int shallowest(int from, int to) {
+    int first = from / BLOCK;
+    int last = to / BLOCK;
+    if (first == last) {
+      return this.scan(from, to);
+    }
+    int best = this.shallower(this.scan(from, first * BLOCK + BLOCK - 1),
+            this.scan(last * BLOCK, to));
+    if (first + 1 < last) {
+      int k = 31 - Integer.numberOfLeadingZeros(last - first - 1);
+      best = this.shallower(best, this.shallower(this.table[k][first + 1],
+              this.table[k][last - (1 << k)]));
+    }
+    return best;
+  }
+
+  // to return the number of wires on the shortest path between the given cells, or
+  // Integer.MAX_VALUE if no wires join them
+  int dist(int[] conn, int a, int b) {
+    if (this.root[a] != this.root[b]) {
+      return Integer.MAX_VALUE;
+    }
+    if (!this.tree[this.root[a]]) {
+      return this.search(conn, a, b);
+    }
+    int ancestor = this.tour[this.shallowest(Math.min(this.seen[a], this.seen[b]),
+            Math.max(this.seen[a], this.seen[b]))];
+    return this.depth[a] + this.depth[b] - 2 * this.depth[ancestor];
+  }
+
+  // to return the number of wires between the given cells of the same component, found
+  // level by level from the first
+  int search(int[] conn, int a, int b) {
+    if (this.queue == null) {
+      this.queue = new int[this.root.length];
+      this.dist = new int[this.root.length];
+      this.stamp = new int[this.root.length];
+    }
+    this.epoch = this.epoch + 1;
+    if (this.epoch == Integer.MAX_VALUE) {
+      Arrays.fill(this.stamp, 0);
+      this.epoch = 1;
+    }
+    int head = 0;
+    int tail = 1;
+    this.queue[0] = a;
+    this.stamp[a] = this.epoch;
+    this.dist[a] = 0;
+    while (head < tail) {
+      int cell = this.queue[head];
+      head = head + 1;
+      if (cell == b) {
+        return this.dist[cell];
+      }
+      for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir << 1) {
+        if ((conn[cell] & dir) != 0) {
+          int next = this.neighbor(cell, dir);
+          if (this.stamp[next] != this.epoch) {
+            this.stamp[next] = this.epoch;
+            this.dist[next] = this.dist[cell] + 1;
+            this.queue[tail] = next;
+            tail = tail + 1;
+          }
+        }
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+}
+
+// to represent every cell of a LightEmAll board in primitive arrays, indexed by
+// col * height + row like LightEmAll.nodes. Neighbors are found arithmetically:
+// top is cell - 1, bottom is cell + 1, left is cell - height and right is cell + height
+class BoardStore {
+  // reads and writes 8 cells of wires at once, one per byte, lowest cell in the lowest byte
+  static final VarHandle LANES = MethodHandles.byteArrayViewVarHandle(long[].class,
+          ByteOrder.LITTLE_ENDIAN);
+  // the given bits of every byte of a long
+  static final long ONES = 0x0101010101010101L;
+  int width;
+  int height;
+  // the number of cells on the board
+  int cells;
+  // the directions each cell has outgoing wires in, as a mask of GamePiece bits
+  byte[] wires;
+  // the directions each cell is wired to its neighbors, as of its last refresh
+  int[] conn;
+  // the number of directions in conn over all cells, twice the number of joined edges
+  int ends;
+  // counts the changes to conn, so that structures built over it can tell they are stale
+  int version;
+  // the cell holding the powerStation
+  int station;
+  // the distance and power of each cell, as of the last flood from station
+  PowerEngine power;
+
+  // Constructor for a BoardStore without any wires or power
+  BoardStore(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.cells = width * height;
+    this.wires = new byte[this.cells];
+    this.conn = new int[this.cells];
+    this.ends = 0;
+    this.version = 0;
+    this.station = 0;
+    this.power = new PowerEngine(width, height);
+  }
+
+  // to return the number of edges whose two cells are wired to each other
+  int joined() {
+    return this.ends / 2;
+  }
+
+
+  // to return the neighbor of the given cell in the given direction, or -1 off the board
+  int neighbor(int cell, int dir) {
+    int row = cell % this.height;
+    if (dir == GamePiece.TOP && row > 0) {
+      return cell - 1;
+    }
+    if (dir == GamePiece.BOTTOM && row < this.height - 1) {
+      return cell + 1;
+    }
+    if (dir == GamePiece.LEFT && cell >= this.height) {
+      return cell - this.height;
+    }
+    if (dir == GamePiece.RIGHT && cell < this.cells - this.height) {
+      return cell + this.height;
+    }
+    return -1;
+  }
+
+  // EFFECT: adds a wire in the given direction to the cell at the given column and row
+  void wire(int col, int row, int dir) {
+    int cell = col * this.height + row;
+    this.wires[cell] = (byte) (this.wires[cell] | dir);
+  }
+
+  // EFFECT: wires the given cell and its neighbor in the given direction to each other
+  void link(int cell, int dir) {
+    int next = this.neighbor(cell, dir);
+    this.wires[cell] = (byte) (this.wires[cell] | dir);
+    this.wires[next] = (byte) (this.wires[next] | (((dir << 2) | (dir >> 2)) & 15));
+  }
+
+  // to return the directions in which the given cell is wired to its neighbors as a mask
+  int wiredMask(int cell) {
+    int mask = 0;
+    for (int dir = GamePiece.TOP; dir <= GamePiece.LEFT; dir = dir * 2) {
+      int next = this.neighbor(cell, dir);
+      // the opposite of a direction is two rotations away
+      int back = ((dir << 2) | (dir >> 2)) & 15;
+      if ((this.wires[cell] & dir) != 0 && next >= 0 && (this.wires[next] & back) != 0) {
+        mask = mask | dir;
+      }
+    }
+    return mask;
+  }
+
+  // EFFECT: refreshes the connections of the given cell, keeping ends and version up to date
+  void refresh(int cell) {
+    this.connect(cell, this.wiredMask(cell));
+  }
+
+  // EFFECT: sets the connections of the given cell to the given mask, keeping ends and
+  // version up to date
+  void connect(int cell, int mask) {
+    if (mask != this.conn[cell]) {
+      this.ends = this.ends + Integer.bitCount(mask) - Integer.bitCount(this.conn[cell]);
+      this.conn[cell] = mask;
+      this.version = this.version + 1;
+    }
+  }
+
+  // EFFECT: refreshes the connections of every cell
+  void refreshAll() {
+    for (int cell = 0; cell < this.cells; cell++) {
+      this.refresh(cell);
+    }
+  }
+
+  // EFFECT: refreshes the connections of every cell like refreshAll(), eight cells per step
+  // and moving on to a single new version. The cells above and below a cell are the bytes
+  // next to it in its column and the cells beside it are height bytes away, so only the
+  // first and last rows need masking; the first column and the last cells go one at a time
+  void connectAll() {
+    int count = 0;
+    int cell = 0;
+    for (; cell < Math.min(this.height, this.cells); cell++) {
+      this.conn[cell] = this.wiredMask(cell);
+      count = count + Integer.bitCount(this.conn[cell]);
+    }
+    // the row of the first cell of the current step
+    int row = 0;
+    for (; cell + this.height + 8 <= this.cells; cell = cell + 8) {
+      long x = (long) LANES.get(this.wires, cell);
+      long above = (long) LANES.get(this.wires, cell - 1);
+      long below = (long) LANES.get(this.wires, cell + 1);
+      long left = (long) LANES.get(this.wires, cell - this.height);
+      long right = (long) LANES.get(this.wires, cell + this.height);
+      // each wire meets the opposite wire of its neighbor, two bits over in that byte
+      long top = x & (above >>> 2) & ONES;
+      long bottom = x & (below << 2) & (ONES * GamePiece.BOTTOM);
+      long links = (x & (right >>> 2) & (ONES * GamePiece.RIGHT))
+              | (x & (left << 2) & (ONES * GamePiece.LEFT));
+      for (int j = (this.height - row) % this.height; j < 8; j = j + this.height) {
+        top = top & ~(0xFFL << (j * 8));
+      }
+      for (int j = this.height - 1 - row; j < 8; j = j + this.height) {
+        bottom = bottom & ~(0xFFL << (j * 8));
+      }
+      links = links | top | bottom;
+      count = count + Long.bitCount(links);
+      for (int j = 0; j < 8; j++) {
+        this.conn[cell + j] = (int) (links >>> (j * 8)) & 15;
+      }
+      row = (row + 8) % this.height;
+    }
+    for (; cell < this.cells; cell++) {
+      this.conn[cell] = this.wiredMask(cell);
+      count = count + Integer.bitCount(this.conn[cell]);
+    }
+    this.ends = count;
+    this.version = this.version + 1;
+  }
+
+  // EFFECT: rotates the wires of the given cell 90 degrees, like GamePiece.rotate(), without
+  // refreshing any connections
+  void rotate(int cell, String direction) {
+    int mask = this.wires[cell];
+    if (direction.equals("LeftButton")) {
+      // right takes bottom, bottom takes left, left takes top and top takes right
+      this.wires[cell] = (byte) (((mask >> 1) | (mask << 3)) & 15);
+    }
+    if (direction.equals("RightButton")) {
+      this.wires[cell] = (byte) (((mask << 1) | (mask >> 3)) & 15);
+    }
+  }
+
+  // EFFECT: rotates the wires of every cell 90 degrees in the given direction
+  void rotateAll(String direction) {
+    byte[] turns = new byte[this.cells];
+    if (direction.equals("LeftButton")) {
+      Arrays.fill(turns, (byte) 1);
+    }
+    if (direction.equals("RightButton")) {
+      Arrays.fill(turns, (byte) 3);
+    }
+    this.turnAll(turns);
+  }
+
+  // EFFECT: rotates the wires of every cell counter clockwise a random number of times, from
+  // 0 to 3, drawn from rand in nodes order like rotating each GamePiece by itself
+  void scramble(Random rand) {
+    byte[] turns = new byte[this.cells];
+    for (int cell = 0; cell < this.cells; cell++) {
+      turns[cell] = (byte) rand.nextInt(4);
+    }
+    this.turnAll(turns);
+  }
+
+  // EFFECT: rotates the wires of every cell counter clockwise as many times as given for it
+  // in turns, from 0 to 3. Eight cells are turned per step, each nibble within its own byte
+  void turnAll(byte[] turns) {
+    int lanes = this.cells - this.cells % 8;
+    for (int i = 0; i < lanes; i = i + 8) {
+      long x = (long) LANES.get(this.wires, i);
+      long t = (long) LANES.get(turns, i);
+      // every nibble of a cell turned once or twice, as a mask of 0xF or 0x0 per byte
+      long once = (t & ONES) * 0xF;
+      long twice = ((t >>> 1) & ONES) * 0xF;
+      long one = ((x >>> 1) & (ONES * 0x7)) | ((x << 3) & (ONES * 0x8));
+      x = (x & ~once) | (one & once);
+      long two = ((x >>> 2) & (ONES * 0x3)) | ((x << 2) & (ONES * 0xC));
+      x = (x & ~twice) | (two & twice);
+      LANES.set(this.wires, i, x);
+    }
+    // the cells past the last full long are turned one at a time
+    for (int cell = lanes; cell < this.cells; cell++) {
+      for (int j = 0; j < turns[cell]; j++) {
+        this.rotate(cell, "LeftButton");
+      }
+    }
+  }
+}
+
+// to build a random Minimum Spanning Tree of a board in parallel with Boruvka's algorithm:
+// every round, each tree picks its lightest outgoing Edge and all of them are joined at
+// once, so about log2(cells) rounds are needed. Edges are packed like in KruskalEngine and
+// ordered by (weight, edge), which makes the tree unique: it never depends on scheduling
+class BoruvkaEngine {
+  // the phases of a round, each run over a range of cells by a BoruvkaTask
+  static final int WEIGH = 0;
+  static final int CHEAPEST = 1;
+  static final int JOIN = 2;
+  static final int WIRE = 3;
+  // the number of columns weighed by each random stream, fixed so that the weights only
+  // depend on the seed
+  static final int STREAM_COLUMNS = 8;
+  // marks a tree without an outgoing Edge
+  static final long NONE = Long.MAX_VALUE;
+  int width;
+  int height;
+  int cells;
+  // the random weight of every Edge, indexed like the packed Edge itself
+  int[] weights;
+  // one random stream per STREAM_COLUMNS columns, split from the seed in order
+  SplittableRandom[] streams;
+  // a union-find shared by all threads; roots link under smaller roots only
+  AtomicIntegerArray parent;
+  // the lightest outgoing Edge of each tree this round, as weight << 32 | edge
+  AtomicLongArray cheapest;
+  // is each Edge in the tree?
+  byte[] chosen;
+  // the number of Edges joined so far
+  AtomicInteger joined;
+  // the wires written by the WIRE phase
+  byte[] wires;
+
+  // Constructor for a BoruvkaEngine over a board of the given dimensions
+  BoruvkaEngine(int width, int height, long seed) {
+    this.width = width;
+    this.height = height;
+    this.cells = width * height;
+    this.weights = new int[this.cells * 2];
+    this.streams = new SplittableRandom[(width + STREAM_COLUMNS - 1) / STREAM_COLUMNS];
+    SplittableRandom root = new SplittableRandom(seed);
+    for (int i = 0; i < this.streams.length; i++) {
+      this.streams[i] = root.split();
+    }
+    this.parent = new AtomicIntegerArray(this.cells);
+    this.cheapest = new AtomicLongArray(this.cells);
+    this.chosen = new byte[this.cells * 2];
+    this.joined = new AtomicInteger(0);
+  }
+
+  // EFFECT: weighs every Edge and joins trees round by round until one spans the board
+  void run(ForkJoinPool pool) {
+    pool.invoke(new BoruvkaTask(this, WEIGH, 0, this.streams.length));
+    int before = -1;
+    while (this.joined.get() > before && this.joined.get() < this.cells - 1) {
+      before = this.joined.get();
+      pool.invoke(new BoruvkaTask(this, CHEAPEST, 0, this.cells));
+      pool.invoke(new BoruvkaTask(this, JOIN, 0, this.cells));
+    }
+  }
+
+  // EFFECT: adds the wires of every Edge in the tree to the given masks, one cell per thread
+  void wire(ForkJoinPool pool, byte[] masks) {
+    this.wires = masks;
+    pool.invoke(new BoruvkaTask(this, WIRE, 0, this.cells));
+  }
+
+  // EFFECT: runs the given phase over the given range of cells, or of streams when weighing
+  void step(int phase, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (phase == WEIGH) {
+        this.weigh(i);
+      }
+      else if (phase == CHEAPEST) {
+        this.offer(i, (i << 1), this.height);
+        this.offer(i, (i << 1) | 1, 1);
+      }
+      else if (phase == JOIN) {
+        this.join(i);
+      }
+      else {
+        this.wireCell(i);
+      }
+    }
+  }
+
+  // EFFECT: weighs the Edges of the columns of the given stream, sweeping like KruskalEngine
+  void weigh(int stream) {
+    SplittableRandom rand = this.streams[stream];
+    int last = Math.min(this.width, (stream + 1) * STREAM_COLUMNS);
+    for (int cell = stream * STREAM_COLUMNS * this.height; cell < last * this.height; cell++) {
+      this.parent.set(cell, cell);
+      this.cheapest.set(cell, NONE);
+      this.weights[cell << 1] = rand.nextInt() & Integer.MAX_VALUE;
+      this.weights[(cell << 1) | 1] = rand.nextInt() & Integer.MAX_VALUE;
+    }
+  }
+
+  // EFFECT: offers the given Edge of the given cell, towards the cell step away, as the
+  // cheapest of both trees it would join
+  void offer(int cell, int edge, int step) {
+    if (!this.exists(edge)) {
+      return;
+    }
+    int from = this.find(cell);
+    int to = this.find(cell + step);
+    if (from != to) {
+      long key = ((long) this.weights[edge] << 32) | edge;
+      this.lower(from, key);
+      this.lower(to, key);
+    }
+  }
+
+  // does the given packed Edge lie on the board?
+  boolean exists(int edge) {
+    int cell = edge >> 1;
+    if ((edge & 1) == 0) {
+      return cell + this.height < this.cells;
+    }
+    else {
+      return cell % this.height < this.height - 1;
+    }
+  }
+
+  // EFFECT: lowers the cheapest Edge of the given tree to the given key
+  void lower(int root, long key) {
+    long current = this.cheapest.get(root);
+    while (key < current && !this.cheapest.compareAndSet(root, current, key)) {
+      current = this.cheapest.get(root);
+    }
+  }
+
+  // EFFECT: joins the cheapest Edge of the given tree, if it was the root of one
+  void join(int cell) {
+    long key = this.cheapest.get(cell);
+    if (key != NONE) {
+      this.cheapest.set(cell, NONE);
+      int edge = (int) key;
+      int other = (edge >> 1) + this.height;
+      if ((edge & 1) == 1) {
+        other = (edge >> 1) + 1;
+      }
+      // both trees may have picked the same Edge; only the first join succeeds
+      if (this.union(edge >> 1, other)) {
+        this.chosen[edge] = 1;
+        this.joined.incrementAndGet();
+      }
+    }
+  }
+
+  // to return the root of the tree of the given cell, halving the path along the way
+  int find(int cell) {
+    int current = cell;
+    while (true) {
+      int up = this.parent.get(current);
+      if (up == current) {
+        return current;
+      }
+      int next = this.parent.get(up);
+      if (next != up) {
+        this.parent.compareAndSet(current, up, next);
+      }
+      current = up;
+    }
+  }
+
+  // to return whether the trees of the given cells were separate
+  // EFFECT: links the larger root under the smaller one
+  boolean union(int a, int b) {
+    while (true) {
+      int rootA = this.find(a);
+      int rootB = this.find(b);
+      if (rootA == rootB) {
+        return false;
+      }
+      int child = Math.max(rootA, rootB);
+      if (this.parent.compareAndSet(child, child, Math.min(rootA, rootB))) {
+        return true;
+      }
+    }
+  }
+
+  // EFFECT: sets the wires of the given cell from the chosen Edges around it
+  void wireCell(int cell) {
+    int mask = 0;
+    if (this.chosen[cell << 1] == 1) {
+      mask = mask | GamePiece.RIGHT;
+    }
+    if (this.chosen[(cell << 1) | 1] == 1) {
+      mask = mask | GamePiece.BOTTOM;
+    }
+    if (cell >= this.height && this.chosen[(cell - this.height) << 1] == 1) {
+      mask = mask | GamePiece.LEFT;
+    }
+    if (cell % this.height > 0 && this.chosen[((cell - 1) << 1) | 1] == 1) {
+      mask = mask | GamePiece.TOP;
+    }
+    this.wires[cell] = (byte) (this.wires[cell] | mask);
+  }
+}
+
+// to run one phase of a BoruvkaEngine over a range, splitting it in halves for other threads
+class BoruvkaTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  // the size of a range worth running on a single thread
+  static final int GRAIN = 8192;
+  BoruvkaEngine engine;
+  int phase;
+  int from;
+  int to;
+
+  // Constructor for a BoruvkaTask over the range [from, to)
+  BoruvkaTask(BoruvkaEngine engine, int phase, int from, int to) {
+    this.engine = engine;
+    this.phase = phase;
+    this.from = from;
+    this.to = to;
+  }
+
+  // EFFECT: runs the phase over the range, in halves if it is large
+  protected void compute() {
+    int grain = GRAIN;
+    if (this.phase == BoruvkaEngine.WEIGH) {
+      grain = 1;
+    }
+    if (this.to - this.from <= grain) {
+      this.engine.step(this.phase, this.from, this.to);
+    }
+    else {
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new BoruvkaTask(this.engine, this.phase, this.from, middle),
+              new BoruvkaTask(this.engine, this.phase, middle, this.to));
+    }
+  }
+}
+
+// to represent the wires of a board as row-major bitplanes, one per direction, so that
+// connections are computed for 64 cells per operation. Every row starts on a fresh word:
+// the row above is one stride away and the bits past the last column are 0
+class BitBoard {
+  int width;
+  int height;
+  // the number of words in each row of a plane
+  int stride;
+  // the planes of wires towards TOP, RIGHT, BOTTOM and LEFT, in that order
+  long[][] wires;
+  // the planes of connections towards TOP, RIGHT, BOTTOM and LEFT, in that order
+  long[][] links;
+
+  // Constructor for a BitBoard without any wires
+  BitBoard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.stride = (width + 63) / 64;
+    this.wires = new long[4][height * this.stride];
+    this.links = new long[4][height * this.stride];
+  }
+
+  // EFFECT: fills the wire planes from masks indexed by col * height + row
+  // Each word gathers the same row of 64 columns, so the columns being read stay in cache
+  void load(byte[] masks) {
+    for (int w = 0; w < this.stride; w++) {
+      int first = w * 64;
+      int last = Math.min(first + 64, this.width);
+      for (int row = 0; row < this.height; row++) {
+        long top = 0;
+        long right = 0;
+        long bottom = 0;
+        long left = 0;
+        int cell = first * this.height + row;
+        for (int shift = 0; shift < last - first; shift++) {
+          long mask = masks[cell];
+          top = top | (mask & 1) << shift;
+          right = right | (mask >> 1 & 1) << shift;
+          bottom = bottom | (mask >> 2 & 1) << shift;
+          left = left | (mask >> 3 & 1) << shift;
+          cell = cell + this.height;
+        }
+        int i = row * this.stride + w;
+        this.wires[0][i] = top;
+        this.wires[1][i] = right;
+        this.wires[2][i] = bottom;
+        this.wires[3][i] = left;
+      }
+    }
+  }
+
+  // EFFECT: computes every connection plane from the wire planes: a cell connects towards a
+  // neighbor when both have a wire pointing at each other
+  void connect() {
+    long[] top = this.wires[0];
+    long[] right = this.wires[1];
+    long[] bottom = this.wires[2];
+    long[] left = this.wires[3];
+    for (int row = 0; row < this.height; row++) {
+      for (int w = 0; w < this.stride; w++) {
+        int i = row * this.stride + w;
+        long up = 0;
+        long down = 0;
+        if (row > 0) {
+          up = bottom[i - this.stride];
+        }
+        if (row < this.height - 1) {
+          down = top[i + this.stride];
+        }
+        // the wires of the next and previous columns, shifted onto this column's bits
+        long next = left[i] >>> 1;
+        long prev = right[i] << 1;
+        if (w + 1 < this.stride) {
+          next = next | (left[i + 1] << 63);
+        }
+        if (w > 0) {
+          prev = prev | (right[i - 1] >>> 63);
+        }
+        this.links[0][i] = top[i] & up;
+        this.links[1][i] = right[i] & next;
+        this.links[2][i] = bottom[i] & down;
+        this.links[3][i] = left[i] & prev;
+      }
+    }
+  }
+
+  // EFFECT: writes the connection planes into masks indexed by col * height + row
+  void unloadLinks(int[] masks) {
+    for (int w = 0; w < this.stride; w++) {
+      int first = w * 64;
+      int last = Math.min(first + 64, this.width);
+      for (int row = 0; row < this.height; row++) {
+        int cell = first * this.height + row;
+        int i = row * this.stride + w;
+        for (int shift = 0; shift < last - first; shift++) {
+          masks[cell] = this.maskAt(this.links, i, shift);
+          cell = cell + this.height;
+        }
+      }
+    }
+  }
+
+  // to return the directions set in the given planes for the cell at the given bit of the
+  // given word, as a mask
+  int maskAt(long[][] planes, int i, int shift) {
+    return (int) ((planes[0][i] >>> shift) & 1)
+            | (int) ((planes[1][i] >>> shift) & 1) << 1
+            | (int) ((planes[2][i] >>> shift) & 1) << 2
+            | (int) ((planes[3][i] >>> shift) & 1) << 3;
+  }
+}
+
+// to represent a LightEmAll game saved to a file: a header with its dimensions, seed, mode,
+// powerStation and radius, followed by the wires of every cell, two cells to a byte with the
+// lower cell index in the low nibble. The file is mapped into memory rather than read
+// through a stream, and its wires are unpacked from the mapping straight into a BoardStore
+class BoardSnapshot {
+  // the first four bytes of every snapshot, "LEAS"
+  static final int MAGIC = 0x5341454C;
+  // the version of the layout written here; files of any other version are refused
+  static final int VERSION = 1;
+  // the length of the header: magic, version, width, height, seed, mode, powerCol,
+  // powerRow and radius, every number little-endian
+  static final int HEADER = 40;
+  // the game modes, numbered by their position here
+  static final String[] MODES = {
+      "MANUAL", "FRACTALS", "KRUSKAL", "BORUVKA", "WILSON", "PRIM", "EMPTY" };
+  // the dimensions of the saved board
+  int width;
+  int height;
+  // the seed the saved game was generated from
+  long seed;
+  // the game mode of the saved game
+  String mode;
+  // the location of the saved powerStation
+  int powerCol;
+  int powerRow;
+  // the effective radius of the saved powerStation
+  int radius;
+  // the mapped file, or null once its wires are unpacked
+  MappedByteBuffer buffer;
+
+  // Constructor for the snapshot saved in the given file. Its header is read and checked
+  // before anything is mapped, so a refused file is never mapped, and its wires are left in
+  // the mapping until they are unpacked
+  BoardSnapshot(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+      int read = 0;
+      while (read >= 0 && header.hasRemaining()) {
+        read = channel.read(header);
+      }
+      if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+        throw new IOException("not a LightEmAll snapshot: " + path);
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException("unsupported snapshot version " + header.getInt(4) + ": " + path);
+      }
+      this.width = header.getInt(8);
+      this.height = header.getInt(12);
+      this.seed = header.getLong(16);
+      int ordinal = header.getInt(24);
+      this.powerCol = header.getInt(28);
+      this.powerRow = header.getInt(32);
+      this.radius = header.getInt(36);
+      if (this.width < 1 || this.height < 1 || ordinal < 0 || ordinal >= MODES.length
+              || this.powerCol < 0 || this.powerCol >= this.width
+              || this.powerRow < 0 || this.powerRow >= this.height
+              || this.radius < 0 || this.radius > this.cells()
+              || channel.size() < HEADER + BoardSnapshot.packedLength(this.cells())) {
+        throw new IOException("corrupt LightEmAll snapshot: " + path);
+      }
+      this.mode = MODES[ordinal];
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  // to return the number of bytes that hold the wires of the given number of cells
+  static long packedLength(long cells) {
+    return (cells + 1) / 2;
+  }
+
+  // to return the number of cells of the saved board
+  long cells() {
+    return (long) this.width * this.height;
+  }
+
+  // EFFECT: writes the given game to the given file, replacing whatever was there
+  static void save(LightEmAll game, Path path) throws IOException {
+    int mode = Arrays.asList(MODES).indexOf(game.mode);
+    if (mode < 0) {
+      throw new IllegalArgumentException("cannot save a game in mode " + game.mode);
+    }
+    byte[] wires = game.store.wires;
+    long length = HEADER + BoardSnapshot.packedLength(wires.length);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      out.order(ByteOrder.LITTLE_ENDIAN);
+      out.putInt(0, MAGIC);
+      out.putInt(4, VERSION);
+      out.putInt(8, game.width);
+      out.putInt(12, game.height);
+      out.putLong(16, game.seed);
+      out.putInt(24, mode);
+      out.putInt(28, game.powerCol);
+      out.putInt(32, game.powerRow);
+      out.putInt(36, game.radius);
+      // eight cells at a time: their bytes are squeezed into the nibbles of one int
+      int i = 0;
+      for (; i + 8 <= wires.length; i = i + 8) {
+        long lanes = (long) BoardStore.LANES.get(wires, i) & 0x0F0F0F0F0F0F0F0FL;
+        lanes = (lanes | (lanes >>> 4)) & 0x00FF00FF00FF00FFL;
+        lanes = (lanes | (lanes >>> 8)) & 0x0000FFFF0000FFFFL;
+        lanes = (lanes | (lanes >>> 16)) & 0x00000000FFFFFFFFL;
+        out.putInt(HEADER + i / 2, (int) lanes);
+      }
+      for (; i < wires.length; i = i + 2) {
+        int pair = wires[i] & 15;
+        if (i + 1 < wires.length) {
+          pair = pair | (wires[i + 1] & 15) << 4;
+        }
+        out.put(HEADER + i / 2, (byte) pair);
+      }
+      out.force();
+    }
+  }
+
+  // EFFECT: copies the saved wires into the given wires, which hold one cell per byte, then
+  // drops the mapping, which the JVM unmaps once it is collected
+  void unpack(byte[] wires) {
+    // eight cells at a time: the nibbles of one int are spread into the bytes of a long
+    int i = 0;
+    for (; i + 8 <= wires.length; i = i + 8) {
+      long lanes = this.buffer.getInt(HEADER + i / 2) & 0xFFFFFFFFL;
+      lanes = (lanes | (lanes << 16)) & 0x0000FFFF0000FFFFL;
+      lanes = (lanes | (lanes << 8)) & 0x00FF00FF00FF00FFL;
+      lanes = (lanes | (lanes << 4)) & 0x0F0F0F0F0F0F0F0FL;
+      BoardStore.LANES.set(wires, i, lanes);
+    }
+    for (; i < wires.length; i++) {
+      wires[i] = (byte) ((this.buffer.get(HEADER + i / 2) >> (i % 2 * 4)) & 15);
+    }
+    this.buffer = null;
+  }
+}
+
+// to represent a pool of LightEmAll games generated ahead of time on background threads, so
+// that starting a game that was asked for in advance takes no generation at all. Pending
+// and ready games are kept in least recently used order and the oldest ones are dropped
+// once their estimated memory passes the budget
+class PuzzlePool {
+  // the estimated bytes each cell of a game keeps alive, without and with GamePiece views
+  static final long CELL_BYTES = 100;
+  static final long VIEW_CELL_BYTES = 140;
+  // the threads that generate games
+  ExecutorService producers;
+  // the tasks of the pending and ready games, least recently used first
+  LinkedHashMap<PuzzleKey, PuzzleTask> games;
+  // the estimated bytes of every game in games and of every dropped game still being
+  // generated, and the most they may add up to
+  long used;
+  long budget;
+  // are the games of this pool scrambled, and do they materialize GamePieces?
+  boolean scramble;
+  boolean views;
+  // the number of games handed out ready, handed out after waiting or generating, and
+  // dropped to stay within the budget
+  long hits;
+  long misses;
+  long evictions;
+  // the total and the longest nanoseconds a take() kept its caller waiting
+  long waited;
+  long longestWait;
+
+  // Constructor for a pool generating on the given number of threads, within the given
+  // estimated number of bytes
+  PuzzlePool(int threads, long budget, boolean scramble, boolean views) {
+    this.producers = Executors.newFixedThreadPool(threads, new PuzzleThreads());
+    this.games = new LinkedHashMap<>(16, 0.75f, true);
+    this.used = 0;
+    this.budget = budget;
+    this.scramble = scramble;
+    this.views = views;
+  }
+
+  // to return the estimated bytes a game of the given dimensions keeps alive in this pool
+  long footprint(int width, int height) {
+    return (long) width * height * (this.views ? VIEW_CELL_BYTES : CELL_BYTES);
+  }
+
+  // EFFECT: starts generating the given game in the background, unless it is already in
+  // this pool, then drops the least recently used games over the budget
+  synchronized void prefetch(int width, int height, String mode, long seed) {
+    PuzzleKey key = new PuzzleKey(width, height, mode, seed);
+    if (this.games.get(key) == null) {
+      PuzzleTask task = new PuzzleTask(key, this.scramble, this.views);
+      task.pool = this;
+      task.future = this.producers.submit(task);
+      this.games.put(key, task);
+      this.used = this.used + this.footprint(width, height);
+      this.evict();
+    }
+  }
+
+  // EFFECT: drops the least recently used games, generated or not, until the rest fit the
+  // budget; the most recently used game is always kept. A game being generated is
+  // interrupted, and its bytes stay in used until its thread has stopped
+  void evict() {
+    Iterator<Map.Entry<PuzzleKey, PuzzleTask>> oldest = this.games.entrySet().iterator();
+    while (this.used > this.budget && this.games.size() > 1) {
+      PuzzleTask task = oldest.next().getValue();
+      task.future.cancel(true);
+      task.dropped = true;
+      if (!task.started || task.finished) {
+        this.release(task);
+      }
+      this.evictions = this.evictions + 1;
+      oldest.remove();
+    }
+  }
+
+  // EFFECT: takes the bytes of the given game out of used, unless they were taken out
+  // already; a thread may begin a game just after it is dropped and released
+  void release(PuzzleTask task) {
+    if (!task.released) {
+      task.released = true;
+      this.used = this.used - this.footprint(task.key.width, task.key.height);
+    }
+  }
+
+  // EFFECT: records that a thread of this pool began generating the given game
+  synchronized void started(PuzzleTask task) {
+    task.started = true;
+  }
+
+  // EFFECT: records that a thread of this pool stopped generating the given game, releasing
+  // its bytes if it was dropped in the meantime
+  synchronized void finished(PuzzleTask task) {
+    task.finished = true;
+    if (task.dropped) {
+      this.release(task);
+    }
+  }
+
+  // to return the given game, out of this pool if it was prefetched and generated on the
+  // spot otherwise; it is a hit only if the game was ready
+  LightEmAll take(int width, int height, String mode, long seed) {
+    long start = System.nanoTime();
+    PuzzleKey key = new PuzzleKey(width, height, mode, seed);
+    Future<LightEmAll> game = null;
+    synchronized (this) {
+      PuzzleTask task = this.games.remove(key);
+      if (task != null) {
+        game = task.future;
+        this.release(task);
+      }
+      if (game != null && game.isDone()) {
+        this.hits = this.hits + 1;
+      }
+      else {
+        this.misses = this.misses + 1;
+      }
+    }
+    LightEmAll taken;
+    if (game == null) {
+      taken = new PuzzleTask(key, this.scramble, this.views).call();
+    }
+    else {
+      taken = this.await(game);
+    }
+    long wait = System.nanoTime() - start;
+    synchronized (this) {
+      this.waited = this.waited + wait;
+      this.longestWait = Math.max(this.longestWait, wait);
+    }
+    return taken;
+  }
+
+  // to return the game the given future generates, once it is done
+  LightEmAll await(Future<LightEmAll> game) {
+    try {
+      return game.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for a game", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("could not generate a game", e.getCause());
+    }
+  }
+
+  // is the given game generated and waiting in this pool?
+  synchronized boolean isReady(int width, int height, String mode, long seed) {
+    PuzzleTask task = this.games.get(new PuzzleKey(width, height, mode, seed));
+    return task != null && task.future.isDone();
+  }
+
+  // to return the mean nanoseconds a take() kept its caller waiting
+  synchronized long averageWait() {
+    long takes = this.hits + this.misses;
+    if (takes == 0) {
+      return 0;
+    }
+    return this.waited / takes;
+  }
+
+  // EFFECT: stops the producers, abandoning the games they have not started
+  void shutdown() {
+    this.producers.shutdownNow();
+  }
+}
+
+// to represent the dimensions, mode and seed a PuzzlePool game is generated from
+class PuzzleKey {
+  // the dimensions of the game
+  int width;
+  int height;
+  // the game mode and the seed of its Random
+  String mode;
+  long seed;
+
+  // Constructor for the key of a game
+  PuzzleKey(int width, int height, String mode, long seed) {
+    this.width = width;
+    this.height = height;
+    this.mode = mode;
+    this.seed = seed;
+  }
+
+  // is the given object a key of the same game?
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof PuzzleKey)) {
+      return false;
+    }
+    PuzzleKey that = (PuzzleKey) other;
+    return this.width == that.width && this.height == that.height
+            && this.mode.equals(that.mode) && this.seed == that.seed;
+  }
+
+  // to return a hash code agreeing with equals
+  @Override
+  public int hashCode() {
+    return ((this.width * 31 + this.height) * 31 + this.mode.hashCode()) * 31
+            + Long.hashCode(this.seed);
+  }
+}
+
+// to generate the game of a PuzzleKey on a PuzzlePool thread
+class PuzzleTask implements Callable<LightEmAll> {
+  // the game to generate
+  PuzzleKey key;
+  // is the game scrambled, and does it materialize GamePieces?
+  boolean scramble;
+  boolean views;
+  // the pool that submitted this task and the future of its game, or null when the game is
+  // generated on the spot
+  PuzzlePool pool;
+  Future<LightEmAll> future;
+  // has a thread of pool begun and stopped generating the game, has pool dropped it, and
+  // has it taken its bytes out of pool's used? Guarded by pool
+  boolean started;
+  boolean finished;
+  boolean dropped;
+  boolean released;
+
+  // Constructor for the task generating the game of the given key
+  PuzzleTask(PuzzleKey key, boolean scramble, boolean views) {
+    this.key = key;
+    this.scramble = scramble;
+    this.views = views;
+  }
+
+  // to return the game of this task's key
+  // EFFECT: tells pool when the generation begins and stops, however it stops
+  public LightEmAll call() {
+    if (this.pool != null) {
+      this.pool.started(this);
+    }
+    try {
+      return new LightEmAll(this.key.width, this.key.height, this.key.mode, this.scramble,
+              this.key.seed, this.views);
+    }
+    finally {
+      if (this.pool != null) {
+        this.pool.finished(this);
+      }
+    }
+  }
+}
+
+// to make the threads of a PuzzlePool, which never keep the program running
+class PuzzleThreads implements ThreadFactory {
+  // the number of threads made so far
+  AtomicInteger made = new AtomicInteger();
+
+  // to return a daemon thread running the given task
+  public Thread newThread(Runnable task) {
+    Thread thread = new Thread(task, "puzzle-pool-" + this.made.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
+
+// to represent a set of cell indices with constant time add, remove, contains and clear
+// A cell is in the set when its position points back at it, so nothing is ever cleared
+class IndexSet {
+  // the cells in this set, in [0, size)
+  int[] items;
+  int size;
+  // the position of each cell in items, meaningful only for the cells in this set
+  int[] pos;
+
+  // Constructor for an empty IndexSet of cells in [0, n)
+  IndexSet(int n) {
+    this.items = new int[n];
+    this.pos = new int[n];
+    this.size = 0;
+  }
+
+  // to return the number of cells in this set
+  int size() {
+    return this.size;
+  }
+
+  // to return the cell at the given position
+  int get(int i) {
+    return this.items[i];
+  }
+
+  // is the given cell in this set?
+  boolean contains(int cell) {
+    int at = this.pos[cell];
+    return at < this.size && this.items[at] == cell;
+  }
+
+  // EFFECT: adds the given cell to this set
+  void add(int cell) {
+    if (!this.contains(cell)) {
+      this.items[this.size] = cell;
+      this.pos[cell] = this.size;
+      this.size = this.size + 1;
+    }
+  }
+
+  // EFFECT: removes the given cell from this set, moving the last cell into its place
+  void remove(int cell) {
+    if (this.contains(cell)) {
+      int last = this.items[this.size - 1];
+      this.items[this.pos[cell]] = last;
+      this.pos[last] = this.pos[cell];
+      this.size = this.size - 1;
+    }
+  }
+
+  // EFFECT: empties this set
+  void clear() {
+    this.size = 0;
+  }
+}
+
+// to represent a binary min-heap of int values ordered by int keys
+class IntHeap {
+  // the keys and values of this heap, in [0, size)
+  int[] keys;
+  int[] values;
+  int size;
+
+  // Constructor for an empty IntHeap with the given starting capacity
+  IntHeap(int capacity) {
+    this.keys = new int[Math.max(1, capacity)];
+    this.values = new int[Math.max(1, capacity)];
+    this.size = 0;
+  }
+
+  // EFFECT: adds the given value with the given key, doubling the capacity when full
+  void push(int key, int value) {
+    if (this.size == this.keys.length) {
+      this.keys = java.util.Arrays.copyOf(this.keys, this.size * 2);
+      this.values = java.util.Arrays.copyOf(this.values, this.size * 2);
+    }
+    int i = this.size;
+    this.size = this.size + 1;
+    while (i > 0 && this.keys[(i - 1) / 2] > key) {
+      this.keys[i] = this.keys[(i - 1) / 2];
+      this.values[i] = this.values[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    this.keys[i] = key;
+    this.values[i] = value;
+  }
+
+  // to return the smallest key in this heap
+  int minKey() {
+    return this.keys[0];
+  }
+
+  // to return the value with the smallest key in this heap
+  int minValue() {
+    return this.values[0];
+  }
+
+  // EFFECT: removes the value with the smallest key
+  void pop() {
+    this.size = this.size - 1;
+    int key = this.keys[this.size];
+    int value = this.values[this.size];
+    int i = 0;
+    while (2 * i + 1 < this.size) {
+      int child = 2 * i + 1;
+      if (child + 1 < this.size && this.keys[child + 1] < this.keys[child]) {
+        child = child + 1;
+      }
+      if (this.keys[child] >= key) {
+        break;
+      }
+      this.keys[i] = this.keys[child];
+      this.values[i] = this.values[child];
+      i = child;
+    }
+    this.keys[i] = key;
+    this.values[i] = value;
+  }
+
+  // EFFECT: empties this heap, keeping its capacity
+  void clear() {
+    this.size = 0;
+  }
+}
+
+// to represent a growable list of cell indices
+class IndexList {
+  // the indices in this list, in [0, size)
+  int[] items;
+  int size;
+
+  // Constructor for an empty IndexList with the given starting capacity
+  IndexList(int capacity) {
+    this.items = new int[Math.max(1, capacity)];
+    this.size = 0;
+  }
+
+  // to return the number of indices in this list
+  int size() {
+    return this.size;
+  }
+
+  // to return the index at the given position
+  int get(int i) {
+    return this.items[i];
+  }
+
+  // EFFECT: appends the given index, doubling the capacity when full
+  void add(int cell) {
+    if (this.size == this.items.length) {
+      this.items = java.util.Arrays.copyOf(this.items, this.items.length * 2);
+    }
+    this.items[this.size] = cell;
+    this.size = this.size + 1;
+  }
+
+  // to return the last index of this list
+  // EFFECT: removes it
+  int pop() {
+    this.size = this.size - 1;
+    return this.items[this.size];
+  }
+
+  // EFFECT: empties this list, keeping its capacity
+  void clear() {
+    this.size = 0;
+  }
+}
+
+// to represent a set of longs with open addressing, for any keys but EMPTY
+class LongSet {
+  // marks a free slot
+  static final long EMPTY = -1;
+  // the slots of this set, a power of two of them
+  long[] slots;
+  // the number of keys in this set
+  int size;
+
+  // Constructor for an empty LongSet with room for about the given number of keys
+  LongSet(int capacity) {
+    this.slots = new long[Integer.highestOneBit(Math.max(4, capacity) * 2 - 1) * 2];
+    Arrays.fill(this.slots, EMPTY);
+    this.size = 0;
+  }
+
+  // to return whether the given key was not in this set yet
+  // EFFECT: adds the key, doubling the slots when they are half full
+  boolean add(long key) {
+    if (this.size * 2 >= this.slots.length) {
+      long[] old = this.slots;
+      this.slots = new long[old.length * 2];
+      Arrays.fill(this.slots, EMPTY);
+      this.size = 0;
+      for (int i = 0; i < old.length; i++) {
+        if (old[i] != EMPTY) {
+          this.add(old[i]);
+        }
+      }
+    }
+    int mask = this.slots.length - 1;
+    int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (this.slots[i] != EMPTY) {
+      if (this.slots[i] == key) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    this.slots[i] = key;
+    this.size = this.size + 1;
+    return true;
+  }
+
+  // does this set contain the given key?
+  boolean contains(long key) {
+    int mask = this.slots.length - 1;
+    int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (this.slots[i] != EMPTY) {
+      if (this.slots[i] == key) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+}
+
+// to represent the moves of a game, oldest first, each packed into an int as its cell
+// shifted over an op. The moves are kept in a ring that doubles until it holds limit
+// moves, after which the oldest ones are forgotten. Moves past done were taken back and
+// can be made again until a new move is recorded
+class MoveLog {
+  // the ops of a move: rotating a GamePiece with either button, or moving the powerStation
+  // from its cell in one of four directions
+  static final int TURN_LEFT = 0;
+  static final int TURN_RIGHT = 1;
+  static final int MOVE_UP = 2;
+  static final int MOVE_RIGHT = 3;
+  static final int MOVE_DOWN = 4;
+  static final int MOVE_LEFT = 5;
+  // the ops of queued input that takes back a move or makes it again; they are never logged
+  static final int UNDO = 6;
+  static final int REDO = 7;
+  // the number of low bits a move keeps its op in
+  static final int OP_BITS = 3;
+  // the mouse button or key making each op, the op taking each one back, and the direction
+  // each move goes in
+  static final String[] KEYS = { "LeftButton", "RightButton", "up", "right", "down", "left",
+      "z", "y" };
+  static final int[] INVERSE = { TURN_RIGHT, TURN_LEFT, MOVE_DOWN, MOVE_LEFT, MOVE_UP,
+      MOVE_RIGHT, REDO, UNDO };
+  static final int[] DIRECTIONS = { 0, 0, GamePiece.TOP, GamePiece.RIGHT, GamePiece.BOTTOM,
+      GamePiece.LEFT, 0, 0 };
+  // the ring of moves, a power of two of them
+  int[] ring;
+  // the position of the oldest move in ring
+  int start;
+  // the number of moves kept, and how many of them are done rather than taken back
+  int size;
+  int done;
+  // the most moves this log keeps
+  int limit;
+
+  // Constructor for an empty MoveLog keeping at most the given number of moves
+  MoveLog(int limit) {
+    this.ring = new int[16];
+    this.start = 0;
+    this.size = 0;
+    this.done = 0;
+    this.limit = limit;
+  }
+
+  // to return the move of the given op at the given cell
+  static int pack(int cell, int op) {
+    return cell << OP_BITS | op;
+  }
+
+  // to return the cell of the given move
+  static int cellOf(int move) {
+    return move >>> OP_BITS;
+  }
+
+  // to return the op of the given move
+  static int opOf(int move) {
+    return move & ((1 << OP_BITS) - 1);
+  }
+
+  // to return the op the given mouse button or key makes, or -1 if it makes none
+  static int opFor(String key) {
+    for (int op = 0; op < KEYS.length; op++) {
+      if (KEYS[op].equals(key)) {
+        return op;
+      }
+    }
+    return -1;
+  }
+
+  // to return the i-th oldest move kept
+  int get(int i) {
+    return this.ring[(this.start + i) & (this.ring.length - 1)];
+  }
+
+  // EFFECT: adds the given move as the newest done, forgetting the moves that were taken
+  // back and, once limit moves are kept, the oldest one
+  void record(int move) {
+    this.size = this.done;
+    if (this.size == this.limit) {
+      this.start = (this.start + 1) & (this.ring.length - 1);
+      this.size = this.size - 1;
+      this.done = this.done - 1;
+    }
+    if (this.size == this.ring.length) {
+      int[] grown = new int[this.ring.length * 2];
+      for (int i = 0; i < this.size; i++) {
+        grown[i] = this.get(i);
+      }
+      this.ring = grown;
+      this.start = 0;
+    }
+    this.ring[(this.start + this.size) & (this.ring.length - 1)] = move;
+    this.size = this.size + 1;
+    this.done = this.done + 1;
+  }
+
+  // is there a done move to take back?
+  boolean canUndo() {
+    return this.done > 0;
+  }
+
+  // is there a taken back move to make again?
+  boolean canRedo() {
+    return this.done < this.size;
+  }
+
+  // to return the newest done move
+  // EFFECT: marks it as taken back
+  int undo() {
+    this.done = this.done - 1;
+    return this.get(this.done);
+  }
+
+  // to return the oldest taken back move
+  // EFFECT: marks it as done again
+  int redo() {
+    this.done = this.done + 1;
+    return this.get(this.done - 1);
+  }
+
+  // EFFECT: forgets every move
+  void clear() {
+    this.start = 0;
+    this.size = 0;
+    this.done = 0;
+  }
+}
+
+// to represent an atlas of every GamePiece image at one pieceSize, keyed by wire mask and
+// power bucket, so drawing a board builds each of the 16 x 10 images at most once
+class TileCache {
+  // the size of the GamePieces these images are drawn for
+  int pieceSize;
+  // the pixels of each (wire mask, power bucket), row by row, built on first use
+  Color[][] tiles;
+  // the image drawn over the powerStation
+  WorldImage station;
+
+  // Constructor for an empty TileCache at the given pieceSize
+  TileCache(int pieceSize) {
+    this.invalidate(pieceSize);
+  }
+
+  // EFFECT: drops every image, so they are drawn again at the given pieceSize
+  void invalidate(int pieceSize) {
+    this.pieceSize = pieceSize;
+    this.tiles = new Color[16 * GamePiece.GRADIENT.length][];
+    this.station = null;
+  }
+
+  // to return the pixels of a GamePiece with the given wires and power bucket
+  Color[] tile(int mask, int bucket) {
+    int key = bucket * 16 + mask;
+    if (this.tiles[key] == null) {
+      this.tiles[key] = this.pixels(mask, GamePiece.GRADIENT[bucket]);
+    }
+    return this.tiles[key];
+  }
+
+  // EFFECT: copies the pixels of a GamePiece with the given wires and power bucket into the
+  // given raster, with their top left corner at the given point
+  void paint(ComputedPixelImage raster, int left, int top, int mask, int bucket) {
+    Color[] pixels = this.tile(mask, bucket);
+    for (int y = 0; y < this.pieceSize; y++) {
+      for (int x = 0; x < this.pieceSize; x++) {
+        raster.setPixel(left + x, top + y, pixels[y * this.pieceSize + x]);
+      }
+    }
+  }
+
+  // to return the pixels of a GamePiece with the given wires in the given color, row by row,
+  // laid out like render(): a dark gray square with a black line along its top and left
+  // sides, and a wire 3 pixels wide and 20 long in from each wired side
+  Color[] pixels(int mask, Color power) {
+    int size = this.pieceSize;
+    // the first of the 3 rows or columns a wire runs along
+    int band = (size - 3) / 2;
+    Color[] pixels = new Color[size * size];
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        boolean across = y >= band && y < band + 3;
+        boolean along = x >= band && x < band + 3;
+        if ((across && (mask & GamePiece.RIGHT) != 0 && x >= size - 20)
+                || (across && (mask & GamePiece.LEFT) != 0 && x < 20)
+                || (along && (mask & GamePiece.TOP) != 0 && y < 20)
+                || (along && (mask & GamePiece.BOTTOM) != 0 && y >= size - 20)) {
+          pixels[y * size + x] = power;
+        }
+        else if (x == 0 || y == 0) {
+          pixels[y * size + x] = Color.black;
+        }
+        else {
+          pixels[y * size + x] = Color.DARK_GRAY;
+        }
+      }
+    }
+    return pixels;
+  }
+
+  // to return the image drawn over the powerStation
+  WorldImage station() {
+    if (this.station == null) {
+      this.station = new OverlayImage(new StarImage(16, 7, OutlineMode.OUTLINE, Color.ORANGE),
+              new StarImage(16, 7, OutlineMode.SOLID, Color.CYAN));
+    }
+    return this.station;
+  }
+
+  // to draw a GamePiece with the given wires in the given color
+  WorldImage render(int mask, Color power) {
+    WorldImage wi = new OverlayImage(
+            new RectangleImage(this.pieceSize - 1, this.pieceSize - 1,
+                    OutlineMode.SOLID, Color.DARK_GRAY),
+            new RectangleImage(this.pieceSize, this.pieceSize, OutlineMode.SOLID, Color.black));
+    if ((mask & GamePiece.RIGHT) != 0) { // if there is a right wire
+      wi = new OverlayOffsetAlign(AlignModeX.RIGHT, AlignModeY.MIDDLE,
+              new RectangleImage(20, 3, OutlineMode.SOLID, power), 0, 0, wi);
+    }
+    if ((mask & GamePiece.LEFT) != 0) { // if there is a left wire
+      wi = new OverlayOffsetAlign(AlignModeX.LEFT, AlignModeY.MIDDLE,
+              new RectangleImage(20, 3, OutlineMode.SOLID, power), 0, 0, wi);
+    }
+    if ((mask & GamePiece.TOP) != 0) { // if there is a top wire
+      wi = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.TOP,
+              new RectangleImage(3, 20, OutlineMode.SOLID, power), 0, 0, wi);
+    }
+    if ((mask & GamePiece.BOTTOM) != 0) { // if there is a bottom wire
+      wi = new OverlayOffsetAlign(AlignModeX.CENTER, AlignModeY.BOTTOM,
+              new RectangleImage(3, 20, OutlineMode.SOLID, power), 0, 0, wi);
+    }
+    return wi;
+  }
+}
+
+// to represent the drawing of a LightEmAll game kept between frames: every GamePiece in one
+// raster that is patched in place, the scene placing it under the powerStation, and the
+// cells that have to be drawn again on the next frame
+class SceneCache {
+  // every GamePiece as of the last frame, or null when it has to be drawn from scratch
+  ComputedPixelImage raster;
+  // the dimensions of raster
+  int width;
+  int height;
+  // the raster with the powerStation over it, or null when it has to be placed again
+  WorldScene scene;
+  // the number of cells on the board
+  int cells;
+  // the number of GamePieces drawn by the last frame
+  int painted;
+  // the cells that may look different since the last frame
+  IndexSet dirty;
+  // the TileCache key last drawn at each cell
+  int[] drawn;
+  // the cell the powerStation is drawn over in scene, or -1
+  int starAt;
+
+  // Constructor for an empty SceneCache over the given number of cells
+  SceneCache(int cells) {
+    this.cells = cells;
+    this.dirty = new IndexSet(cells);
+    this.drawn = new int[cells];
+    this.invalidate();
+  }
+
+  // EFFECT: forgets the kept raster and scene so the next frame draws every cell
+  void invalidate() {
+    this.raster = null;
+    this.scene = null;
+    this.starAt = -1;
+  }
+
+  // EFFECT: starts a new, empty raster of the given dimensions
+  void rebuild(int width, int height) {
+    this.raster = new ComputedPixelImage(width, height);
+    this.width = width;
+    this.height = height;
+    this.scene = null;
+    this.starAt = -1;
+  }
+
+  // does the next frame have to draw every cell? True when there is no raster yet
+  boolean isStale() {
+    return this.raster == null;
+  }
+
+  // to return the scene showing raster with the given image centered at the given point,
+  // over the given cell
+  // EFFECT: places raster and the image on a new scene, unless the kept one already shows
+  // the image over that cell
+  WorldScene compose(WorldImage star, int cell, int x, int y) {
+    if (this.scene == null || cell != this.starAt) {
+      this.scene = new WorldScene(this.width, this.height);
+      this.scene.placeImageXY(this.raster, this.width / 2, this.height / 2);
+      this.scene.placeImageXY(star, x, y);
+      this.starAt = cell;
+    }
+    return this.scene;
+  }
+
+  // EFFECT: marks the given cell to be drawn again on the next frame
+  void mark(int cell) {
+    this.dirty.add(cell);
+  }
+}
+
 //interface for a Comparator
 interface IComparator<T> extends Comparator<T> {
 }
 
+// to be told when a move solves a LightEmAll puzzle; a game tells its listeners once
+interface ICompletionListener {
+  // EFFECT: reacts to the given game being solved
+  void onSolved(LightEmAll game);
+}
+
+// to remember when a LightEmAll puzzle was solved
+class CompletionRecord implements ICompletionListener {
+  // the number of times a game was solved
+  int times;
+  // the number of moves the game had logged when it was last solved
+  int moves;
+
+  // EFFECT: counts the solved game and its moves
+  public void onSolved(LightEmAll game) {
+    this.times = this.times + 1;
+    this.moves = game.moves.done;
+  }
+}
+
 //to compare the weight of two Edges
 class HeavierThan implements IComparator<Edge> {
 public int compare(Edge left, Edge right) {
@@ -1015,21 +4542,21 @@ class ExamplesLightEmAll {
             && t.checkExpect(this.leaF3.board.get(0).size(), 11)
             && t.checkExpect(this.leaF3.board.size(), 15)
             && t.checkExpect(this.leaF4.nodes.size(), 256)
-            && t.checkExpect(this.gp1.neighborList.size(), 2)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp2), true)
-            && t.checkExpect(this.gp2.neighborList.contains(this.gp1), true)
-            && t.checkExpect(this.gp4.neighborList.contains(this.gp1), true)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp4), true)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp3), false)
-            && t.checkExpect(this.gp5.neighborList.size(), 4)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp2), true)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp4), true)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp6), true)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp8), true)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp1), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp3), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp5), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp7), false)
+            && t.checkExpect(this.gp1.neighbors().size(), 2)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp2), true)
+            && t.checkExpect(this.gp2.neighbors().contains(this.gp1), true)
+            && t.checkExpect(this.gp4.neighbors().contains(this.gp1), true)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp4), true)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp3), false)
+            && t.checkExpect(this.gp5.neighbors().size(), 4)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp2), true)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp4), true)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp6), true)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp8), true)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp1), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp3), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp5), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp7), false)
             && t.checkExpect(this.leaF0.radius, 6)
             && t.checkExpect(this.leaM2.radius, 8)
             && t.checkExpect(this.leaF1.radius, 8)
@@ -1070,24 +4597,24 @@ class ExamplesLightEmAll {
     GamePiece leaM2target = this.leaF0.board.get(0).get(1);
     // (1, 1)
     GamePiece leaM3target = this.leaF0.board.get(1).get(1);
-    return t.checkExpect(leaM1target.wireTop, false)
-            && t.checkExpect(leaM1target.wireLeft, false)
-            && t.checkExpect(leaM1target.wireBot, true)
-            && t.checkExpect(leaM1target.wireRight, false)
-            // && t.checkExpect(leaM1target.isPowered, false)
+    return t.checkExpect(leaM1target.wireTop(), false)
+            && t.checkExpect(leaM1target.wireLeft(), false)
+            && t.checkExpect(leaM1target.wireBot(), true)
+            && t.checkExpect(leaM1target.wireRight(), false)
+            // && t.checkExpect(leaM1target.isPowered(), false)
             && t.checkExpect(leaM1target.isConnected(leaM3target), true)
-            && t.checkExpect(leaM2target.wireTop, true)
-            // && t.checkExpect(leaM2target.wireLeft, true)
-            && t.checkExpect(leaM2target.wireBot, true)
-            // && t.checkExpect(leaM2target.wireRight, false)
-            && t.checkExpect(leaM2target.isPowered, true)
+            && t.checkExpect(leaM2target.wireTop(), true)
+            // && t.checkExpect(leaM2target.wireLeft(), true)
+            && t.checkExpect(leaM2target.wireBot(), true)
+            // && t.checkExpect(leaM2target.wireRight(), false)
+            && t.checkExpect(leaM2target.isPowered(), true)
             // && t.checkExpect(leaM2target.isConnected(leaM3target), false)
             && t.checkExpect(leaM2target.isConnected(leaM0target), true)
-            && t.checkExpect(leaM3target.wireTop, true)
-            && t.checkExpect(leaM3target.wireLeft, true)
-            && t.checkExpect(leaM3target.wireBot, false)
-            && t.checkExpect(leaM3target.wireRight, false)
-            // && t.checkExpect(leaM3target.isPowered, false)
+            && t.checkExpect(leaM3target.wireTop(), true)
+            && t.checkExpect(leaM3target.wireLeft(), true)
+            && t.checkExpect(leaM3target.wireBot(), false)
+            && t.checkExpect(leaM3target.wireRight(), false)
+            // && t.checkExpect(leaM3target.isPowered(), false)
             // && t.checkExpect(leaM3target.isConnected(leaM2target), false)
             && t.checkExpect(leaM3target.isConnected(leaM1target), true);
   }
@@ -1115,51 +4642,83 @@ class ExamplesLightEmAll {
     this.leaF1.onKeyEvent("left");
     this.leaF1.onKeyEvent("up");
     this.leaF1.onKeyEvent("up");
-    return t.checkExpect(this.leaF0.board.get(1).get(3).powerStation, true)
-            && t.checkExpect(this.leaF0.board.get(0).get(0).powerStation, false)
+    return t.checkExpect(this.leaF0.board.get(1).get(3).powerStation(), true)
+            && t.checkExpect(this.leaF0.board.get(0).get(0).powerStation(), false)
             && t.checkExpect(this.leaF0.powered.size(), this.leaF0.nodes.size())
-            && t.checkExpect(this.leaF1.board.get(0).get(0).powerStation, false)
-            && t.checkExpect(this.leaF1.board.get(3).get(0).powerStation, true);
+            && t.checkExpect(this.leaF1.board.get(0).get(0).powerStation(), false)
+            && t.checkExpect(this.leaF1.board.get(3).get(0).powerStation(), true);
+  }
+
+  // test LightEmAll.touchedCells(): to count the GamePieces refreshed by an event
+  boolean testTouchedCells(Tester t) {
+    this.initLightEmAll();
+    this.leaF2.onMouseClicked(new Posn(100, 140), "LeftButton");
+    int middle = this.leaF2.touchedCells();
+    this.leaF2.onMouseClicked(new Posn(5, 5), "RightButton");
+    int corner = this.leaF2.touchedCells();
+    this.leaF2.onMouseClicked(new Posn(5, 5), "LeftButton");
+    this.leaF2.onKeyEvent("down");
+    int moved = this.leaF2.touchedCells();
+    this.leaF2.onKeyEvent("left");
+    int blocked = this.leaF2.touchedCells();
+    return t.checkExpect(middle, 5)
+            && t.checkExpect(corner, 3)
+            && t.checkExpect(moved, 2)
+            && t.checkExpect(blocked, 0)
+            && t.checkExpect(this.leaF2.board.get(0).get(1).powerStation(), true)
+            && t.checkExpect(this.leaF2.board.get(0).get(0).powerStation(), false);
   }
 
-  // test LightEmAll.connectNeighbors: to establish relationships between all GamePieces
-  boolean testConnectNeighbors(Tester t) {
+  // test LightEmAll.refreshAround(): to keep connections consistent with a full sweep
+  boolean testRefreshAround(Tester t) {
+    LightEmAll game = new LightEmAll(6, 5, "KRUSKAL", false, new Random(2));
+    Random clicks = new Random(5);
+    for (int i = 0; i < 40; i++) {
+      game.onMouseClicked(new Posn(clicks.nextInt(240), clicks.nextInt(200)), "LeftButton");
+    }
+    int[] local = java.util.Arrays.copyOf(game.conn, game.conn.length);
+    game.updateConnections();
+    return t.checkExpect(java.util.Arrays.equals(local, game.conn), true);
+  }
+
+  // test GamePiece.neighbors(): to find every GamePiece next to another
+  boolean testNeighbors(Tester t) {
     this.initLightEmAll();
     LightEmAll tmpTestGame = new LightEmAll(2, 2, "FRACTALS");
-    return t.checkExpect(tmpTestGame.board.get(0).get(0).neighborHash.get("right"),
+    return t.checkExpect(tmpTestGame.board.get(0).get(0).neighbor(GamePiece.RIGHT),
             tmpTestGame.board.get(1).get(0))
-            && t.checkExpect(tmpTestGame.board.get(0).get(0).neighborHash.get("bottom"),
+            && t.checkExpect(tmpTestGame.board.get(0).get(0).neighbor(GamePiece.BOTTOM),
             tmpTestGame.board.get(0).get(1))
-            && t.checkExpect(tmpTestGame.board.get(0).get(0).neighborHash.get("left"), null)
-            && t.checkExpect(tmpTestGame.board.get(1).get(1).neighborHash.get("left"),
+            && t.checkExpect(tmpTestGame.board.get(0).get(0).neighbor(GamePiece.LEFT), null)
+            && t.checkExpect(tmpTestGame.board.get(1).get(1).neighbor(GamePiece.LEFT),
             tmpTestGame.board.get(0).get(1))
-            && t.checkExpect(tmpTestGame.board.get(0).get(1).neighborHash.get("top"),
+            && t.checkExpect(tmpTestGame.board.get(0).get(1).neighbor(GamePiece.TOP),
             tmpTestGame.board.get(0).get(0))
-            && t.checkExpect(this.gp1.neighborList.size(), 2)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp2), true)
-            && t.checkExpect(this.gp1.neighborHash.get("bottom"), this.gp2)
-            && t.checkExpect(this.gp1.neighborHash.get("right"), this.gp4)
-            && t.checkExpect(this.gp2.neighborList.contains(this.gp1), true)
-            && t.checkExpect(this.gp2.neighborHash.get("top"), this.gp1)
-            && t.checkExpect(this.gp4.neighborList.contains(this.gp1), true)
-            && t.checkExpect(this.gp4.neighborHash.get("left"), this.gp1)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp4), true)
-            && t.checkExpect(this.gp4.neighborHash.get("right"), this.gp7)
+            && t.checkExpect(this.gp1.neighbors().size(), 2)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp2), true)
+            && t.checkExpect(this.gp1.neighbor(GamePiece.BOTTOM), this.gp2)
+            && t.checkExpect(this.gp1.neighbor(GamePiece.RIGHT), this.gp4)
+            && t.checkExpect(this.gp2.neighbors().contains(this.gp1), true)
+            && t.checkExpect(this.gp2.neighbor(GamePiece.TOP), this.gp1)
+            && t.checkExpect(this.gp4.neighbors().contains(this.gp1), true)
+            && t.checkExpect(this.gp4.neighbor(GamePiece.LEFT), this.gp1)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp4), true)
+            && t.checkExpect(this.gp4.neighbor(GamePiece.RIGHT), this.gp7)
             // && t.checkExpect(this.gp4.neighborHash.get("down"), this.gp5)
-            && t.checkExpect(this.gp1.neighborList.contains(this.gp3), false)
-            && t.checkExpect(this.gp5.neighborList.size(), 4)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp2), true)
-            && t.checkExpect(this.gp5.neighborHash.get("left"), this.gp2)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp4), true)
-            && t.checkExpect(this.gp5.neighborHash.get("top"), this.gp4)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp6), true)
+            && t.checkExpect(this.gp1.neighbors().contains(this.gp3), false)
+            && t.checkExpect(this.gp5.neighbors().size(), 4)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp2), true)
+            && t.checkExpect(this.gp5.neighbor(GamePiece.LEFT), this.gp2)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp4), true)
+            && t.checkExpect(this.gp5.neighbor(GamePiece.TOP), this.gp4)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp6), true)
             // && t.checkExpect(this.gp5.neighborHash.get("down"), this.gp6)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp8), true)
-            && t.checkExpect(this.gp5.neighborHash.get("right"), this.gp8)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp1), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp3), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp5), false)
-            && t.checkExpect(this.gp5.neighborList.contains(this.gp7), false);
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp8), true)
+            && t.checkExpect(this.gp5.neighbor(GamePiece.RIGHT), this.gp8)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp1), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp3), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp5), false)
+            && t.checkExpect(this.gp5.neighbors().contains(this.gp7), false);
   }
 
   // test LightEmAll.genBoard: to generate the LightEmAll grid
@@ -1202,13 +4761,13 @@ class ExamplesLightEmAll {
   boolean testManualWires(Tester t) {
     this.initLightEmAll();
     LightEmAll tmpTestGame = new LightEmAll(2, 2, "MANUAL");
-    return t.checkExpect(tmpTestGame.board.get(0).get(0).wireBot, true)
-            && t.checkExpect(tmpTestGame.board.get(1).get(0).wireBot, true)
-            && t.checkExpect(tmpTestGame.board.get(1).get(0).wireTop, false)
-            && t.checkExpect(tmpTestGame.board.get(1).get(1).wireRight, false)
-            && t.checkExpect(tmpTestGame.board.get(1).get(1).wireTop, true)
-            && t.checkExpect(tmpTestGame.board.get(0).get(0).wireLeft, false)
-            && t.checkExpect(tmpTestGame.board.get(0).get(1).wireBot, false);
+    return t.checkExpect(tmpTestGame.board.get(0).get(0).wireBot(), true)
+            && t.checkExpect(tmpTestGame.board.get(1).get(0).wireBot(), true)
+            && t.checkExpect(tmpTestGame.board.get(1).get(0).wireTop(), false)
+            && t.checkExpect(tmpTestGame.board.get(1).get(1).wireRight(), false)
+            && t.checkExpect(tmpTestGame.board.get(1).get(1).wireTop(), true)
+            && t.checkExpect(tmpTestGame.board.get(0).get(0).wireLeft(), false)
+            && t.checkExpect(tmpTestGame.board.get(0).get(1).wireBot(), false);
   }
 
   // test LightEmAll.kruskalWires(): to randomly generate a wire board using Kruskal's algorithm
@@ -1217,33 +4776,422 @@ class ExamplesLightEmAll {
     return true;
   }
 
-  // test LightEmAll.findRep(): to find a GamePieces deepest representative
+  // test LightEmAll.wilsonWires(): to generate a random spanning tree without an Edge list
+  boolean testWilsonWires(Tester t) {
+    LightEmAll game = new LightEmAll(9, 7, "WILSON", false, new Random(12));
+    LightEmAll again = new LightEmAll(9, 7, "WILSON", false, new Random(12));
+    int links = 0;
+    for (int i = 0; i < 63; i++) {
+      links = links + Integer.bitCount(game.conn[i]);
+    }
+    return t.checkExpect(links, 2 * 62)
+            && t.checkExpect(game.power.reached.size(), 63)
+            && t.checkExpect(Arrays.equals(game.store.wires, again.store.wires), true);
+  }
+
+  // test LightEmAll.primWires(): to grow a random spanning tree from a heap of Edges
+  boolean testPrimWires(Tester t) {
+    LightEmAll game = new LightEmAll(8, 11, "PRIM", false, new Random(13));
+    LightEmAll scrambled = new LightEmAll(8, 11, "PRIM", true, new Random(13));
+    int links = 0;
+    for (int i = 0; i < 88; i++) {
+      links = links + Integer.bitCount(game.conn[i]);
+    }
+    return t.checkExpect(links, 2 * 87)
+            && t.checkExpect(game.power.reached.size(), 88)
+            && t.checkExpect(scrambled.power.reached.size() < 88, true);
+  }
+
+  // test BoardStore.link(): to wire two neighboring cells to each other
+  boolean testBoardStoreLink(Tester t) {
+    BoardStore bs = new BoardStore(2, 2);
+    bs.link(0, GamePiece.RIGHT);
+    bs.link(3, GamePiece.TOP);
+    return t.checkExpect((int) bs.wires[0], GamePiece.RIGHT)
+            && t.checkExpect((int) bs.wires[2], GamePiece.LEFT | GamePiece.BOTTOM)
+            && t.checkExpect((int) bs.wires[3], GamePiece.TOP);
+  }
+
+  // test LightEmAll.save(): to resume a saved game with the same wires, powerStation,
+  // radius and power
+  boolean testBoardSnapshot(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".lea");
+    LightEmAll game = new LightEmAll(13, 7, "KRUSKAL", true, 5L, true);
+    game.onKeyEvent("down");
+    game.onKeyEvent("right");
+    game.save(path);
+    // the file stays mapped until the collector unmaps it, so it is only deleted on exit
+    path.toFile().deleteOnExit();
+    long length = Files.size(path);
+    BoardSnapshot snapshot = new BoardSnapshot(path);
+    boolean mapped = snapshot.buffer.capacity() == length;
+    LightEmAll loaded = new LightEmAll(snapshot, false);
+    return t.checkExpect(length, BoardSnapshot.HEADER + 46L)
+            && t.checkExpect(mapped, true)
+            && t.checkExpect(snapshot.buffer == null, true)
+            && t.checkExpect(loaded.mode, "KRUSKAL")
+            && t.checkExpect(loaded.seed, 5L)
+            && t.checkExpect(Arrays.equals(loaded.store.wires, game.store.wires), true)
+            && t.checkExpect(Arrays.equals(loaded.conn, game.conn), true)
+            && t.checkExpect(loaded.store.station, game.store.station)
+            && t.checkExpect(loaded.radius, game.radius)
+            && t.checkExpect(loaded.powered.size(), game.powered.size());
+  }
+
+  // test BoardSnapshot(): to refuse files that are not snapshots of this version
+  boolean testBoardSnapshotRefused(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".lea");
+    LightEmAll game = new LightEmAll(3, 3, "MANUAL");
+    game.save(path);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    channel.write(ByteBuffer.wrap(new byte[] { 2, 0, 0, 0 }), 4);
+    channel.close();
+    String version = "";
+    try {
+      new BoardSnapshot(path);
+    }
+    catch (IOException e) {
+      version = e.getMessage();
+    }
+    Path cut = Files.createTempFile("board", ".lea");
+    Files.write(cut, new byte[] { 1, 2, 3 });
+    String tooShort = "";
+    try {
+      new BoardSnapshot(cut);
+    }
+    catch (IOException e) {
+      tooShort = e.getMessage();
+    }
+    Path far = Files.createTempFile("board", ".lea");
+    game.save(far);
+    FileChannel radius = FileChannel.open(far, StandardOpenOption.WRITE);
+    radius.write(ByteBuffer.wrap(new byte[] { -1, -1, -1, -1 }), 36);
+    radius.close();
+    String negative = "";
+    try {
+      new BoardSnapshot(far);
+    }
+    catch (IOException e) {
+      negative = e.getMessage();
+    }
+    Files.delete(path);
+    Files.delete(cut);
+    Files.delete(far);
+    return t.checkExpect(version, "unsupported snapshot version 2: " + path)
+            && t.checkExpect(tooShort, "not a LightEmAll snapshot: " + cut)
+            && t.checkExpect(negative, "corrupt LightEmAll snapshot: " + far);
+  }
+
+  // test PuzzlePool.take(): to hand out prefetched games ready, and to generate the rest
+  boolean testPuzzlePool(Tester t) throws Exception {
+    PuzzlePool pool = new PuzzlePool(1, 1 << 20, true, true);
+    pool.prefetch(6, 5, "KRUSKAL", 2L);
+    pool.prefetch(6, 5, "KRUSKAL", 2L);
+    pool.games.get(new PuzzleKey(6, 5, "KRUSKAL", 2L)).future.get();
+    boolean ready = pool.isReady(6, 5, "KRUSKAL", 2L);
+    LightEmAll pooled = pool.take(6, 5, "KRUSKAL", 2L);
+    LightEmAll again = pool.take(6, 5, "KRUSKAL", 2L);
+    LightEmAll fresh = new LightEmAll(6, 5, "KRUSKAL", true, 2L, true);
+    pool.shutdown();
+    return t.checkExpect(ready, true)
+            && t.checkExpect(Arrays.equals(pooled.store.wires, fresh.store.wires), true)
+            && t.checkExpect(pooled.nodes.size(), 30)
+            && t.checkExpect(pooled == again, false)
+            && t.checkExpect(Arrays.equals(again.store.wires, fresh.store.wires), true)
+            && t.checkExpect(pool.hits, 1L)
+            && t.checkExpect(pool.misses, 1L)
+            && t.checkExpect(pool.used, 0L)
+            && t.checkExpect(pool.longestWait >= pool.averageWait(), true);
+  }
+
+  // test PuzzlePool.evict(): to drop the least recently used games over the budget
+  boolean testPuzzlePoolEvict(Tester t) throws InterruptedException {
+    PuzzlePool pool = new PuzzlePool(1, 2 * 20 * 100, false, false);
+    pool.prefetch(4, 5, "PRIM", 1L);
+    pool.prefetch(4, 5, "PRIM", 2L);
+    pool.isReady(4, 5, "PRIM", 1L);
+    pool.prefetch(4, 5, "PRIM", 3L);
+    boolean first = pool.games.containsKey(new PuzzleKey(4, 5, "PRIM", 1L));
+    boolean second = pool.games.containsKey(new PuzzleKey(4, 5, "PRIM", 2L));
+    pool.shutdown();
+    // a dropped game still being generated keeps its bytes until its thread stops
+    pool.producers.awaitTermination(1, TimeUnit.MINUTES);
+    return t.checkExpect(pool.footprint(4, 5), 2000L)
+            && t.checkExpect(first, true)
+            && t.checkExpect(second, false)
+            && t.checkExpect(pool.evictions, 1L)
+            && t.checkExpect(pool.used, 4000L);
+  }
+
+  // test PuzzlePool.finished(): to keep the bytes of a dropped game in used until the
+  // thread generating it stops, and to interrupt that thread
+  boolean testPuzzlePoolDrain(Tester t) {
+    PuzzlePool pool = new PuzzlePool(1, 20 * 100, false, false);
+    PuzzleTask running = new PuzzleTask(new PuzzleKey(4, 5, "PRIM", 1L), false, false);
+    running.pool = pool;
+    running.future = new FutureTask<>(running);
+    pool.games.put(running.key, running);
+    pool.used = pool.footprint(4, 5);
+    pool.started(running);
+    pool.prefetch(4, 5, "PRIM", 2L);
+    long during = pool.used;
+    boolean kept = pool.games.containsKey(running.key);
+    pool.finished(running);
+    pool.shutdown();
+    return t.checkExpect(kept, false)
+            && t.checkExpect(running.future.isCancelled(), true)
+            && t.checkExpect(running.dropped, true)
+            && t.checkExpect(during, 4000L)
+            && t.checkExpect(pool.used, 2000L)
+            && t.checkExpect(pool.evictions, 1L);
+  }
+
+  // test PuzzlePool.release(): to release a game dropped before its thread began only once,
+  // when that thread then begins it, is interrupted and stops
+  boolean testPuzzlePoolReleaseOnce(Tester t) {
+    PuzzlePool pool = new PuzzlePool(1, 20 * 100, false, false);
+    PuzzleTask pending = new PuzzleTask(new PuzzleKey(4, 5, "PRIM", 1L), false, false);
+    pending.pool = pool;
+    pending.future = new FutureTask<>(pending);
+    pool.games.put(pending.key, pending);
+    pool.used = pool.footprint(4, 5);
+    // the thread is about to begin the game, waiting on the pool while it is dropped
+    pool.prefetch(4, 5, "PRIM", 2L);
+    long dropped = pool.used;
+    String stopped = "";
+    Thread.currentThread().interrupt();
+    try {
+      pending.call();
+    }
+    catch (CancellationException e) {
+      stopped = e.getMessage();
+    }
+    Thread.interrupted();
+    pool.shutdown();
+    return t.checkExpect(dropped, 2000L)
+            && t.checkExpect(stopped, "interrupted while generating a game")
+            && t.checkExpect(pending.started, true)
+            && t.checkExpect(pending.finished, true)
+            && t.checkExpect(pending.released, true)
+            && t.checkExpect(pool.used, 2000L);
+  }
+
+  // test LightEmAll.checkInterrupted(): to stop generating a game once its thread is
+  // interrupted, leaving the thread interrupted
+  boolean testCheckInterrupted(Tester t) {
+    String stopped = "";
+    Thread.currentThread().interrupt();
+    try {
+      new LightEmAll(6, 5, "WILSON", false, 1L, false);
+    }
+    catch (CancellationException e) {
+      stopped = e.getMessage();
+    }
+    boolean interrupted = Thread.interrupted();
+    LightEmAll after = new LightEmAll(6, 5, "WILSON", false, 1L, false);
+    return t.checkExpect(stopped, "interrupted while generating a game")
+            && t.checkExpect(interrupted, true)
+            && t.checkExpect(after.powered.size() > 0, true);
+  }
+
+  // test MoveLog.record(): to keep the newest moves in a growing ring, and to take them back
+  // and make them again
+  boolean testMoveLog(Tester t) {
+    MoveLog log = new MoveLog(20);
+    for (int i = 0; i < 25; i++) {
+      log.record(MoveLog.pack(i, MoveLog.MOVE_UP));
+    }
+    int oldest = MoveLog.cellOf(log.get(0));
+    int undone = log.undo();
+    log.undo();
+    int redone = log.redo();
+    log.record(MoveLog.pack(7, MoveLog.TURN_RIGHT));
+    return t.checkExpect(log.ring.length, 32)
+            && t.checkExpect(oldest, 5)
+            && t.checkExpect(MoveLog.cellOf(undone), 24)
+            && t.checkExpect(MoveLog.cellOf(redone), 23)
+            && t.checkExpect(log.size, 20)
+            && t.checkExpect(log.canRedo(), false)
+            && t.checkExpect(MoveLog.opOf(log.get(19)), MoveLog.TURN_RIGHT)
+            && t.checkExpect(MoveLog.opFor("down"), MoveLog.MOVE_DOWN)
+            && t.checkExpect(MoveLog.opFor("x"), -1);
+  }
+
+  // test LightEmAll.undo(): to take back rotations and powerStation moves in reverse order,
+  // and LightEmAll.redo(): to make them again
+  boolean testUndoRedo(Tester t) {
+    LightEmAll game = new LightEmAll(7, 6, "KRUSKAL", true, 4L, true);
+    byte[] wires = game.store.wires.clone();
+    int station = game.store.station;
+    int powered = game.powered.size();
+    game.onMouseClicked(new Posn(20, 60), "LeftButton");
+    game.onMouseClicked(new Posn(20, 20), "RightButton");
+    game.onKeyEvent("down");
+    game.onKeyEvent("right");
+    game.onMouseClicked(new Posn(100, 100), "RightButton");
+    byte[] played = game.store.wires.clone();
+    int playedStation = game.store.station;
+    int playedPowered = game.powered.size();
+    int logged = game.moves.size;
+    for (int i = 0; i < logged; i++) {
+      game.onKeyEvent("z");
+    }
+    boolean restored = Arrays.equals(game.store.wires, wires) && game.store.station == station
+            && game.powered.size() == powered && !game.moves.canUndo();
+    for (int i = 0; i < logged; i++) {
+      game.onKeyEvent("y");
+    }
+    return t.checkExpect(restored, true)
+            && t.checkExpect(Arrays.equals(game.store.wires, played), true)
+            && t.checkExpect(game.store.station, playedStation)
+            && t.checkExpect(game.powered.size(), playedPowered)
+            && t.checkExpect(game.nodes.get(playedStation).powerStation(), true);
+  }
+
+  // test LightEmAll.replay(): to reach the same game as the logged moves did
+  boolean testReplay(Tester t) {
+    LightEmAll game = new LightEmAll(9, 8, "KRUSKAL", true, 6L, true);
+    Random rand = new Random(6);
+    for (int i = 0; i < 200; i++) {
+      if (rand.nextInt(3) == 0) {
+        game.onKeyEvent(MoveLog.KEYS[2 + rand.nextInt(4)]);
+      }
+      else {
+        game.onMouseClicked(new Posn(rand.nextInt(360), rand.nextInt(320)), "LeftButton");
+      }
+    }
+    LightEmAll copy = new LightEmAll(9, 8, "KRUSKAL", true, 6L, false);
+    copy.replay(game.moves);
+    return t.checkExpect(Arrays.equals(copy.store.wires, game.store.wires), true)
+            && t.checkExpect(Arrays.equals(copy.conn, game.conn), true)
+            && t.checkExpect(copy.store.station, game.store.station)
+            && t.checkExpect(copy.powered.size(), game.powered.size())
+            && t.checkExpect(copy.power.distOf(game.store.station), 0)
+            && t.checkExpect(copy.moves.size, game.moves.size);
+  }
+
+  // test LightEmAll.onTick(): to make the queued clicks and key presses of a batching game
+  // together, ending where the same input made one by one ends
+  boolean testBatchInput(Tester t) {
+    LightEmAll each = new LightEmAll(8, 6, "KRUSKAL", true, 9L, true);
+    LightEmAll batched = new LightEmAll(8, 6, "KRUSKAL", true, 9L, true);
+    batched.batchInput = true;
+    byte[] start = batched.store.wires.clone();
+    String[] keys = { "down", "right", "z", "right", "up", "z", "y", "x" };
+    for (int i = 0; i < keys.length; i++) {
+      Posn click = new Posn(20 + 40 * i, 60 + 20 * i);
+      each.onMouseClicked(click, "LeftButton");
+      batched.onMouseClicked(click, "LeftButton");
+      each.onKeyEvent(keys[i]);
+      batched.onKeyEvent(keys[i]);
+    }
+    boolean waiting = Arrays.equals(batched.store.wires, start) && batched.inputs.size() == 15;
+    batched.onTick();
+    int reached = batched.power.reached.size();
+    batched.onTick();
+    return t.checkExpect(waiting, true)
+            && t.checkExpect(Arrays.equals(batched.store.wires, each.store.wires), true)
+            && t.checkExpect(Arrays.equals(batched.conn, each.conn), true)
+            && t.checkExpect(batched.store.station, each.store.station)
+            && t.checkExpect(batched.powered.size(), each.powered.size())
+            && t.checkExpect(batched.moves.size, each.moves.size)
+            && t.checkExpect(batched.inputs.size(), 0)
+            && t.checkExpect(batched.power.reached.size(), reached);
+  }
+
+  // test BoardStore.refresh(): to keep count of the joined edges as connections change
+  boolean testBoardStoreJoined(Tester t) {
+    BoardStore bs = new BoardStore(3, 2);
+    bs.link(0, GamePiece.RIGHT);
+    bs.link(2, GamePiece.BOTTOM);
+    bs.link(5, GamePiece.TOP);
+    bs.refreshAll();
+    int before = bs.joined();
+    bs.rotate(5, "RightButton");
+    bs.refresh(5);
+    bs.refresh(4);
+    int after = bs.joined();
+    bs.connectAll();
+    return t.checkExpect(before, 3)
+            && t.checkExpect(after, 2)
+            && t.checkExpect(bs.ends, 4);
+  }
+
+  // test LightEmAll.checkSolved(): to tell listeners once, the first time a move solves
+  // the puzzle
+  boolean testCheckSolved(Tester t) {
+    LightEmAll game = new LightEmAll(3, 1, "EMPTY", false, new Random(1), false);
+    game.store.wires[0] = GamePiece.BOTTOM;
+    game.store.wires[1] = GamePiece.LEFT | GamePiece.RIGHT;
+    game.store.wires[2] = GamePiece.TOP;
+    game.radius = 3;
+    game.updateConnections();
+    game.powerDown();
+    game.powerUp();
+    game.solved = game.isSolved();
+    CompletionRecord record = new CompletionRecord();
+    game.addCompletionListener(record);
+    boolean unsolved = !game.isSolved() && game.store.joined() == 0;
+    game.onMouseClicked(new Posn(20, 20), "LeftButton");
+    boolean half = !game.isSolved() && record.times == 0 && game.store.joined() == 1;
+    game.onMouseClicked(new Posn(100, 20), "LeftButton");
+    boolean whole = game.isSolved() && record.times == 1 && record.moves == 2;
+    game.onKeyEvent("z");
+    game.onKeyEvent("y");
+    return t.checkExpect(unsolved, true)
+            && t.checkExpect(half, true)
+            && t.checkExpect(whole, true)
+            && t.checkExpect(game.isSolved(), true)
+            && t.checkExpect(game.completed, true)
+            && t.checkExpect(record.times, 1);
+  }
+
+  // test LightEmAll.findRep(): to find the representative of a GamePiece's set
   boolean testFindRep(Tester t) {
-    // TODO: Fix Me (Throws NullPointerException)
     this.initLightEmAll();
     LightEmAll tmpTestGame1 = new LightEmAll(5, 5, "EMPTY");
     LightEmAll tmpTestGame2 = new LightEmAll(4, 4, "EMPTY");
-    tmpTestGame1.representatives.put(this.gp1, this.gp2);
-    tmpTestGame1.representatives.put(this.gp2, this.gp3);
-    tmpTestGame1.representatives.put(this.gp3, this.gp4);
-    tmpTestGame1.representatives.put(this.gp5, this.gp5);
-    tmpTestGame1.representatives.put(this.gp7, this.gp6);
-    tmpTestGame1.representatives.put(this.gp8, this.gp6);
-    tmpTestGame1.representatives.put(this.gp6, this.gp3);
-    tmpTestGame2.representatives.put(this.gp10, this.gp11);
-    tmpTestGame2.representatives.put(this.gp12, this.gp11);
-    tmpTestGame2.representatives.put(this.gp13, this.gp10);
-    // return t.checkExpect(tmpTestGame1.findRep(this.gp1), this.gp3)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp2), this.gp3)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp3), this.gp3)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp5), this.gp5)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp7), this.gp3)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp8), this.gp3)
-    //         && t.checkExpect(tmpTestGame1.findRep(this.gp6), this.gp3)
-    //         && t.checkExpect(tmpTestGame2.findRep(this.gp10), this.gp11)
-    //         && t.checkExpect(tmpTestGame2.findRep(this.gp12), this.gp11)
-    //         && t.checkExpect(tmpTestGame2.findRep(this.gp13), this.gp11);
-    return true;
+    GamePiece a = tmpTestGame1.board.get(0).get(0);
+    GamePiece b = tmpTestGame1.board.get(0).get(1);
+    GamePiece c = tmpTestGame1.board.get(3).get(2);
+    GamePiece d = tmpTestGame1.board.get(4).get(4);
+    tmpTestGame1.genEdges();
+    tmpTestGame1.representatives.union(tmpTestGame1.indexOf(a), tmpTestGame1.indexOf(b));
+    tmpTestGame1.representatives.union(tmpTestGame1.indexOf(b), tmpTestGame1.indexOf(c));
+    return t.checkExpect(tmpTestGame1.findRep(a), tmpTestGame1.findRep(c))
+            && t.checkExpect(tmpTestGame1.findRep(b), tmpTestGame1.findRep(a))
+            && t.checkExpect(tmpTestGame1.findRep(d), d)
+            && t.checkExpect(tmpTestGame2.representatives, null)
+            && t.checkExpect(tmpTestGame2.findRep(tmpTestGame2.board.get(2).get(3)),
+            tmpTestGame2.board.get(2).get(3));
+  }
+
+  // test LightEmAll.pieceAt(): to hand out views of cells on boards with and without nodes,
+  // so that findRep() and findDeepest() work on both
+  boolean testPieceAt(Tester t) {
+    LightEmAll full = new LightEmAll(6, 5, "KRUSKAL", false, 3L, true);
+    LightEmAll bare = new LightEmAll(6, 5, "KRUSKAL", false, 3L, false);
+    GamePiece corner = new GamePiece(2, 3, bare.store);
+    bare.genEdges();
+    bare.representatives.union(0, bare.indexOf(corner));
+    int rep = bare.representatives.find(0);
+    GamePiece deepest = bare.findDeepest(new GamePiece(0, 0, bare.store), 0,
+            new ArrayList<>()).values().iterator().next();
+    GamePiece expected = full.findDeepest(full.board.get(0).get(0), 0,
+            new ArrayList<>()).values().iterator().next();
+    return t.checkExpect(full.pieceAt(7) == full.nodes.get(7), true)
+            && t.checkExpect(bare.pieceAt(7), new GamePiece(1, 2, bare.store))
+            && t.checkExpect(bare.findRep(corner), bare.pieceAt(rep))
+            && t.checkExpect(deepest.col, expected.col)
+            && t.checkExpect(deepest.row, expected.row);
+  }
+
+  // test LightEmAll.indexOf(): to find the index of a GamePiece in nodes
+  boolean testIndexOf(Tester t) {
+    this.initLightEmAll();
+    return t.checkExpect(this.leaF3.indexOf(this.leaF3.board.get(0).get(0)), 0)
+            && t.checkExpect(this.leaF3.indexOf(this.leaF3.board.get(2).get(7)), 29)
+            && t.checkExpect(this.leaF3.nodes.get(29), this.leaF3.board.get(2).get(7));
   }
 
   // test LightEmAll.genEdges(): to generate all possible Edges in the board
@@ -1259,11 +5207,15 @@ class ExamplesLightEmAll {
     this.leaF3.genEdges();
     // Test on 16x16 grid
     this.leaF4.genEdges();
-    return t.checkExpect(this.leaF0.worklist.size(), 24)
-            && t.checkExpect(this.leaF1.worklist.size(), 40)
-            && t.checkExpect(this.leaF2.worklist.size(), 144)
-            && t.checkExpect(this.leaF3.worklist.size(), 304)
-            && t.checkExpect(this.leaF4.worklist.size(), 480);
+    return t.checkExpect(this.leaF0.kruskal.count, 24)
+            && t.checkExpect(this.leaF1.kruskal.count, 40)
+            && t.checkExpect(this.leaF2.kruskal.count, 144)
+            && t.checkExpect(this.leaF3.kruskal.count, 304)
+            && t.checkExpect(this.leaF4.kruskal.count, 480)
+            && t.checkExpect(this.leaF4.representatives, this.leaF4.kruskal.sets)
+            && t.checkExpect(this.leaM2.kruskal, null)
+            && t.checkExpect(this.leaM2.representatives, null)
+            && t.checkExpect(this.leaK2.representatives == this.leaK2.kruskal.sets, true);
   }
 
   // test LightEmAll.updateConnections: to update connections according to wire placement
@@ -1275,8 +5227,8 @@ class ExamplesLightEmAll {
     tmpTestGame.board.get(1).get(0).rotate("LeftButton");
     tmpTestGame.board.get(0).get(0).updateConnections();
     tmpTestGame.board.get(1).get(0).updateConnections();
-    return t.checkExpect(tmpTestGame.board.get(0).get(0).rig, true)
-            && t.checkExpect(tmpTestGame.board.get(1).get(0).lef, true);
+    return t.checkExpect(tmpTestGame.board.get(0).get(0).rig(), true)
+            && t.checkExpect(tmpTestGame.board.get(1).get(0).lef(), true);
   }
 
   // test LightEmAll.powerDown(): to turn off the power of the LightEmAll grid
@@ -1292,6 +5244,22 @@ class ExamplesLightEmAll {
             && t.checkExpect(this.leaK5.powered.size() == 0, true);
   }
 
+  // test LightEmAll.powerUp(): to power every GamePiece connected to the powerStation
+  boolean testLightEmAllPowerUp(Tester t) {
+    this.initLightEmAll();
+    this.leaM2.powerDown();
+    boolean downBefore = !this.leaM2.board.get(0).get(0).isPowered();
+    this.leaM2.powerUp();
+    return t.checkExpect(downBefore, true)
+            && t.checkExpect(this.leaM2.powered.size(), 24)
+            && t.checkExpect(this.leaM2.board.get(0).get(0).isPowered(), true)
+            && t.checkExpect(this.leaM2.board.get(0).get(0).distFromPower(), 0)
+            && t.checkExpect(this.leaM2.board.get(0).get(4).distFromPower(), 4)
+            && t.checkExpect(this.leaM2.board.get(1).get(0).isPowered(), false)
+            && t.checkExpect(this.leaM2.board.get(1).get(0).distFromPower(), 9)
+            && t.checkExpect(this.leaM2.powered.get(0), 0);
+  }
+
   // test LightEmAll.findRadius(): to find the effective radius of the powerStation
   boolean testFindRadius(Tester t) {
     this.initLightEmAll();
@@ -1332,12 +5300,37 @@ class ExamplesLightEmAll {
     testNeighbors.add(this.leaM2.board.get(1).get(4));
     ArrayList<GamePiece> acc = new ArrayList<>();
     acc.add(this.leaM2.board.get(2).get(4));
-    HashMap<Integer, GamePiece> ans1 = this.leaM2.findDeeper(testNeighbors, 0, acc);
+    HashMap<Integer, GamePiece> ans1 = this.leaM2.findDeeper(testNeighbors, 1, acc);
     HashMap<Integer, GamePiece> exp1 = new HashMap<>();
-    exp1.put(15, this.leaM2.board.get(7).get(0));
-    return true;
-    // INTENDED tests:
-    // return t.checkExpect(ans1, exp1);
+    exp1.put(9, this.leaM2.board.get(7).get(0));
+    return t.checkExpect(ans1, exp1);
+  }
+
+  // test DiameterEngine.farthestFrom(): to find the deepest cell without recursion
+  boolean testDiameterEngine(Tester t) {
+    // a 3x2 board wired as a single path: (0,0) (1,0) (2,0) (2,1) (1,1) (0,1)
+    int[] conn = new int[6];
+    conn[0] = GamePiece.RIGHT;
+    conn[2] = GamePiece.LEFT | GamePiece.RIGHT;
+    conn[4] = GamePiece.LEFT | GamePiece.BOTTOM;
+    conn[5] = GamePiece.TOP | GamePiece.LEFT;
+    conn[3] = GamePiece.RIGHT | GamePiece.LEFT;
+    conn[1] = GamePiece.RIGHT;
+    DiameterEngine de = new DiameterEngine(3, 2);
+    int fromCorner = de.farthestFrom(conn, 0);
+    int cornerDepth = de.depth;
+    int fromMiddle = de.farthestFrom(conn, 4);
+    int middleDepth = de.depth;
+    de.begin();
+    de.exclude(2);
+    de.seed(0);
+    de.run(conn);
+    return t.checkExpect(fromCorner, 1)
+            && t.checkExpect(cornerDepth, 5)
+            && t.checkExpect(fromMiddle, 1)
+            && t.checkExpect(middleDepth, 3)
+            && t.checkExpect(de.farthest, 0)
+            && t.checkExpect(de.depth, 0);
   }
 
   // BEGIN tests for GamePiece.java
@@ -1355,35 +5348,159 @@ class ExamplesLightEmAll {
     return true;
   }
 
+  // test GamePiece.powerGradient(): to color a GamePiece by its distance from power
   boolean testPowerGradient(Tester t) {
-    // TODO: Add tests for powerGradient()
-    return true;
+    GamePiece gp = new GamePiece(0, 0);
+    gp.setDistFromPower(0);
+    Color atStation = gp.powerGradient(100);
+    gp.setDistFromPower(60);
+    Color farther = gp.powerGradient(100);
+    gp.setDistFromPower(100);
+    Color edge = gp.powerGradient(100);
+    gp.setDistFromPower(Integer.MAX_VALUE);
+    Color unpowered = gp.powerGradient(100);
+    return t.checkExpect(atStation, new Color(255, 255, 204))
+            && t.checkExpect(farther, new Color(153, 153, 0))
+            && t.checkExpect(edge, new Color(75, 75, 0))
+            && t.checkExpect(unpowered, Color.black);
+  }
+
+  // test GamePiece.powerBucket(): to find the gradient color used for a GamePiece
+  boolean testPowerBucket(Tester t) {
+    GamePiece gp = new GamePiece(0, 0);
+    gp.setDistFromPower(5);
+    int near = gp.powerBucket(40);
+    int none = gp.powerBucket(4);
+    gp.setDistFromPower(4);
+    return t.checkExpect(near, 4)
+            && t.checkExpect(none, 9)
+            && t.checkExpect(gp.powerBucket(4), 8)
+            && t.checkExpect(gp.powerBucket(0), 9);
+  }
+
+  // test GamePiece.wireMask(): to pack a GamePiece's own wires into a mask
+  boolean testWireMask(Tester t) {
+    GamePiece gp = new GamePiece(0, 0);
+    gp.store.wire(0, 0, GamePiece.TOP);
+    gp.store.wire(0, 0, GamePiece.LEFT);
+    return t.checkExpect(gp.wireMask(), GamePiece.TOP | GamePiece.LEFT)
+            && t.checkExpect(new GamePiece(1, 1).wireMask(), 0)
+            && t.checkExpect(new GamePiece(999, 999).store.cells, 1)
+            && t.checkExpect(new GamePiece(999, 999).cell(), 0);
+  }
+
+  // test TileCache.tile(): to reuse the pixels of one GamePiece per wire mask and power bucket
+  boolean testTileCache(Tester t) {
+    TileCache tc = new TileCache(40);
+    Color[] first = tc.tile(5, 2);
+    Color[] again = tc.tile(5, 2);
+    Color[] other = tc.tile(5, 3);
+    WorldImage star = tc.station();
+    tc.invalidate(20);
+    return t.checkExpect(first == again, true)
+            && t.checkExpect(first == other, false)
+            && t.checkExpect(star == tc.station(), false)
+            && t.checkExpect(tc.pieceSize, 20)
+            && t.checkExpect(tc.tiles[2 * 16 + 5], null);
+  }
+
+  // test LightEmAll.makeScene(): to draw only the cells that changed since the last frame
+  boolean testMakeScene(Tester t) {
+    LightEmAll game = new LightEmAll(9, 9, "FRACTALS");
+    WorldScene first = game.makeScene();
+    int firstPainted = game.frame.painted;
+    WorldScene idle = game.makeScene();
+    int idlePainted = game.frame.painted;
+    game.onMouseClicked(new Posn(300, 300), "LeftButton");
+    WorldScene clicked = game.makeScene();
+    int clickPainted = game.frame.painted;
+    game.onKeyEvent("down");
+    game.makeScene();
+    int movedStar = game.frame.starAt;
+    return t.checkExpect(firstPainted, 81)
+            && t.checkExpect(idle == first, true)
+            && t.checkExpect(idlePainted, 0)
+            && t.checkExpect(clicked == first, true)
+            && t.checkExpect(clickPainted >= 1 && clickPainted < 81, true)
+            && t.checkExpect(movedStar, 1);
+  }
+
+  // test SceneCache.isStale(): to draw every cell again only without a kept raster
+  boolean testSceneCacheIsStale(Tester t) {
+    SceneCache sc = new SceneCache(4);
+    boolean empty = sc.isStale();
+    sc.rebuild(80, 80);
+    boolean fresh = sc.isStale();
+    sc.invalidate();
+    return t.checkExpect(empty, true)
+            && t.checkExpect(fresh, false)
+            && t.checkExpect(sc.isStale(), true)
+            && t.checkExpect(sc.starAt, -1);
   }
 
-  // test GamePiece.addNeighbor(): to add a given GamePiece to another's neighbors
-  boolean testAddNeighbor(Tester t) {
+  // test SceneCache.compose(): to place the raster again only when the powerStation moves
+  boolean testSceneCacheCompose(Tester t) {
+    SceneCache sc = new SceneCache(4);
+    sc.rebuild(80, 80);
+    WorldImage star = new TileCache(40).station();
+    WorldScene first = sc.compose(star, 0, 20, 20);
+    WorldScene same = sc.compose(star, 0, 20, 20);
+    WorldScene moved = sc.compose(star, 1, 20, 60);
+    return t.checkExpect(same == first, true)
+            && t.checkExpect(moved == first, false)
+            && t.checkExpect(sc.starAt, 1);
+  }
+
+  // test TileCache.pixels(): to lay out the pixels of a GamePiece like its image
+  boolean testTilePixels(Tester t) {
+    TileCache tc = new TileCache(40);
+    Color[] right = tc.pixels(GamePiece.RIGHT, Color.yellow);
+    return t.checkExpect(right.length, 1600)
+            && t.checkExpect(right[0], Color.black)
+            && t.checkExpect(right[5 * 40 + 30], Color.DARK_GRAY)
+            && t.checkExpect(right[19 * 40 + 39], Color.yellow)
+            && t.checkExpect(right[19 * 40 + 20], Color.yellow)
+            && t.checkExpect(right[19 * 40 + 19], Color.DARK_GRAY)
+            && t.checkExpect(right[19 * 40], Color.black);
+  }
+
+  // test LightEmAll.setPieceSize(): to redraw GamePieces at a new size
+  boolean testSetPieceSize(Tester t) {
     this.initLightEmAll();
-    this.gp1.addNeighbor("bottom", this.gp3);
-    this.gp1.addNeighbor("right", this.gp2);
-    return t.checkExpect(this.gp1.neighborHash.get("bottom"), this.gp3)
-            && t.checkExpect(this.gp2.neighborHash.get("left"), null)
-            && t.checkExpect(this.gp1.neighborHash.get("right"), this.gp2)
-            && t.checkExpect(this.gp1.neighborHash.get("top"), null);
+    this.leaF0.makeScene();
+    this.leaF0.setPieceSize(20);
+    GamePiece corner = this.leaF0.board.get(0).get(0);
+    int key = corner.powerBucket(this.leaF0.radius) * 16 + corner.wireMask();
+    boolean dropped = this.leaF0.tiles.tiles[key] == null;
+    this.leaF0.makeScene();
+    return t.checkExpect(this.leaF0.tiles.pieceSize, 20)
+            && t.checkExpect(dropped, true)
+            && t.checkExpect(this.leaF0.tiles.tiles[key] == null, false);
+  }
+
+  // test GamePiece.neighbor(): to find the GamePiece next to another in a direction
+  boolean testNeighbor(Tester t) {
+    this.initLightEmAll();
+    return t.checkExpect(this.gp1.neighbor(GamePiece.BOTTOM), this.gp2)
+            && t.checkExpect(this.gp2.neighbor(GamePiece.LEFT), null)
+            && t.checkExpect(this.gp1.neighbor(GamePiece.RIGHT), this.gp4)
+            && t.checkExpect(this.gp1.neighbor(GamePiece.TOP), null)
+            && t.checkExpect(this.gp5.neighbor(GamePiece.TOP), this.gp4)
+            && t.checkExpect(new GamePiece(0, 0).neighbor(GamePiece.RIGHT), null);
   }
 
   // test GamePiece.rotate(): to rotate wire placement
   boolean testRotate(Tester t) {
     this.initLightEmAll();
-    this.gp1.wireBot = true;
-    this.gp2.wireTop = true;
-    this.gp2.wireRight = true;
+    this.gp1.setWireMask(this.gp1.wireMask() | GamePiece.BOTTOM);
+    this.gp2.setWireMask(this.gp2.wireMask() | GamePiece.TOP | GamePiece.RIGHT);
     this.gp1.rotate("RightButton");
     this.gp2.rotate("RightButton");
-    return t.checkExpect(this.gp1.wireBot, false)
-            && t.checkExpect(this.gp1.wireRight, false)
-            && t.checkExpect(this.gp2.wireTop, false)
-            && t.checkExpect(this.gp2.wireRight, true)
-            && t.checkExpect(this.gp2.wireLeft, true);
+    return t.checkExpect(this.gp1.wireBot(), false)
+            && t.checkExpect(this.gp1.wireRight(), false)
+            && t.checkExpect(this.gp2.wireTop(), false)
+            && t.checkExpect(this.gp2.wireRight(), true)
+            && t.checkExpect(this.gp2.wireLeft(), true);
   }
 
   // test GamePiece.updateConnections(): to update connections according to wire placement
@@ -1395,8 +5512,8 @@ class ExamplesLightEmAll {
     tmpTestGame.board.get(1).get(0).rotate("LeftButton");
     tmpTestGame.board.get(0).get(0).updateConnections();
     tmpTestGame.board.get(1).get(0).updateConnections();
-    return t.checkExpect(tmpTestGame.board.get(0).get(0).rig, true)
-            && t.checkExpect(tmpTestGame.board.get(1).get(0).lef, true);
+    return t.checkExpect(tmpTestGame.board.get(0).get(0).rig(), true)
+            && t.checkExpect(tmpTestGame.board.get(1).get(0).lef(), true);
   }
 
   // test GamePiece.updatePowerStation: to update powerStation boolean
@@ -1404,8 +5521,8 @@ class ExamplesLightEmAll {
     this.initLightEmAll();
     this.testBoard2.get(0).get(0).updatePowerStation(0, 1);
     this.testBoard2.get(0).get(1).updatePowerStation(0, 1);
-    return t.checkExpect(this.testBoard2.get(0).get(0).powerStation, false)
-            && t.checkExpect(this.testBoard2.get(0).get(1).powerStation, true);
+    return t.checkExpect(this.testBoard2.get(0).get(0).powerStation(), false)
+            && t.checkExpect(this.testBoard2.get(0).get(1).powerStation(), true);
   }
 
   // test GamePiece.isConnected(): to return whether this GamePiece is connected to other
@@ -1416,6 +5533,26 @@ class ExamplesLightEmAll {
             && t.checkExpect(this.gp3.isConnected(this.gp2), true);
   }
 
+  // test GamePiece.connectionMask(): to pack a GamePiece's connections into a mask
+  boolean testConnectionMask(Tester t) {
+    this.initLightEmAll();
+    GamePiece corner = this.leaM2.board.get(0).get(0);
+    corner.setConnectionMask(corner.connectionMask() | GamePiece.RIGHT);
+    return t.checkExpect(corner.connectionMask(), GamePiece.RIGHT | GamePiece.BOTTOM)
+            && t.checkExpect(this.leaM2.board.get(3).get(4).connectionMask(), 15);
+  }
+
+  // test GamePiece.wiredMask(): to find the directions a GamePiece is wired to its neighbors
+  boolean testWiredMask(Tester t) {
+    this.initLightEmAll();
+    GamePiece middle = this.leaM2.board.get(3).get(4);
+    return t.checkExpect(middle.wiredMask(), GamePiece.TOP | GamePiece.RIGHT
+            | GamePiece.BOTTOM | GamePiece.LEFT)
+            && t.checkExpect(this.leaM2.board.get(3).get(0).wiredMask(), GamePiece.BOTTOM)
+            && t.checkExpect(this.leaM2.board.get(0).get(4).wiredMask(),
+            GamePiece.TOP | GamePiece.RIGHT | GamePiece.BOTTOM);
+  }
+
   // test GamePiece.powerUp(): to power up the grid
   boolean testPowerUp(Tester t) {
     this.initLightEmAll();
@@ -1439,6 +5576,682 @@ class ExamplesLightEmAll {
             && t.checkExpect(this.leaF4.powered.size(), 177);
   }
 
+  // test PowerEngine.flood(): to carry power through connections without recursion
+  boolean testPowerEngine(Tester t) {
+    // a 2x2 board wired as (0,0) - (1,0) - (1,1), with (0,1) left out
+    int[] conn = new int[4];
+    conn[0] = GamePiece.RIGHT;
+    conn[2] = GamePiece.LEFT | GamePiece.BOTTOM;
+    conn[3] = GamePiece.TOP;
+    PowerEngine pe = new PowerEngine(2, 2);
+    pe.flood(conn, 0, 1);
+    return t.checkExpect(pe.reached.size(), 3)
+            && t.checkExpect(pe.parent[3], 2)
+            && t.checkExpect(pe.distOf(3), 2)
+            && t.checkExpect(pe.distOf(1), Integer.MAX_VALUE)
+            && t.checkExpect(pe.isPowered(2), true)
+            && t.checkExpect(pe.isPowered(3), false)
+            && t.checkExpect(pe.powered.size(), 2);
+  }
+
+  // test PowerEngine.clear(): to forget a flood without clearing any array
+  boolean testPowerEngineClear(Tester t) {
+    int[] conn = new int[4];
+    conn[0] = GamePiece.BOTTOM;
+    conn[1] = GamePiece.TOP;
+    PowerEngine pe = new PowerEngine(2, 2);
+    pe.flood(conn, 1, 5);
+    pe.clear();
+    return t.checkExpect(pe.reached.size(), 0)
+            && t.checkExpect(pe.powered.size(), 0)
+            && t.checkExpect(pe.distOf(0), Integer.MAX_VALUE)
+            && t.checkExpect(pe.dist[0], 1);
+  }
+
+  // test PowerEngine.rotated(): to repair power after a cell's connections change
+  boolean testPowerEngineRotated(Tester t) {
+    // a 3x1 board (0,0) - (1,0) - (2,0); the middle piece is cut off, then rewired
+    int[] conn = new int[3];
+    conn[0] = GamePiece.RIGHT;
+    conn[1] = GamePiece.LEFT | GamePiece.RIGHT;
+    conn[2] = GamePiece.LEFT;
+    PowerEngine pe = new PowerEngine(3, 1);
+    pe.flood(conn, 0, 1);
+    conn[1] = 0;
+    conn[0] = 0;
+    conn[2] = 0;
+    pe.rotated(conn, 1, GamePiece.LEFT | GamePiece.RIGHT);
+    boolean cut = pe.distOf(1) == Integer.MAX_VALUE && pe.distOf(2) == Integer.MAX_VALUE
+            && pe.changed.size() == 2 && pe.powered.size() == 1;
+    conn[1] = GamePiece.LEFT;
+    conn[0] = GamePiece.RIGHT;
+    pe.rotated(conn, 1, 0);
+    return t.checkExpect(cut, true)
+            && t.checkExpect(pe.distOf(1), 1)
+            && t.checkExpect(pe.isPowered(1), true)
+            && t.checkExpect(pe.distOf(2), Integer.MAX_VALUE)
+            && t.checkExpect(pe.changed.size(), 1);
+  }
+
+  // test LightEmAll.repower(): to keep power consistent with a full flood after clicks
+  boolean testRepower(Tester t) {
+    LightEmAll game = new LightEmAll(9, 7, "KRUSKAL", false, new Random(4));
+    Random clicks = new Random(11);
+    boolean consistent = true;
+    for (int i = 0; i < 60; i++) {
+      String button = "LeftButton";
+      if (clicks.nextBoolean()) {
+        button = "RightButton";
+      }
+      game.onMouseClicked(new Posn(clicks.nextInt(360), clicks.nextInt(280)), button);
+      PowerEngine fresh = new PowerEngine(9, 7);
+      fresh.flood(game.conn, game.powerCol * game.height + game.powerRow, game.radius);
+      for (int j = 0; j < game.nodes.size(); j++) {
+        consistent = consistent
+                && game.nodes.get(j).distFromPower() == fresh.distOf(j)
+                && game.nodes.get(j).isPowered() == fresh.isPowered(j);
+      }
+      consistent = consistent && game.powered.size() == fresh.powered.size();
+    }
+    return t.checkExpect(consistent, true);
+  }
+
+  // test PowerEngine.reroot(): to move the powerStation along a tree of wires by shifting
+  // distances, and to refuse when the wires have a loop
+  boolean testPowerEngineReroot(Tester t) {
+    int[] conn = new int[6];
+    conn[0] = GamePiece.RIGHT;
+    conn[2] = GamePiece.LEFT | GamePiece.RIGHT | GamePiece.BOTTOM;
+    conn[3] = GamePiece.TOP;
+    conn[4] = GamePiece.LEFT;
+    PowerEngine pe = new PowerEngine(3, 2);
+    pe.flood(conn, 0, 1);
+    boolean before = pe.isPowered(2) && !pe.isPowered(3) && pe.distOf(4) == 2;
+    boolean down = pe.reroot(conn, 0, 2);
+    boolean back = pe.reroot(conn, 2, 0);
+    int[] loop = new int[4];
+    loop[0] = GamePiece.RIGHT | GamePiece.BOTTOM;
+    loop[1] = GamePiece.RIGHT | GamePiece.TOP;
+    loop[2] = GamePiece.LEFT | GamePiece.BOTTOM;
+    loop[3] = GamePiece.LEFT | GamePiece.TOP;
+    PowerEngine cycle = new PowerEngine(2, 2);
+    cycle.flood(loop, 0, 5);
+    return t.checkExpect(before, true)
+            && t.checkExpect(down, true)
+            && t.checkExpect(back, true)
+            && t.checkExpect(pe.tree, true)
+            && t.checkExpect(pe.distOf(0), 0)
+            && t.checkExpect(pe.distOf(3), 2)
+            && t.checkExpect(pe.parent[2], 0)
+            && t.checkExpect(pe.isPowered(3), false)
+            && t.checkExpect(pe.powered.size(), 2)
+            && t.checkExpect(pe.reroot(conn, 2, 4), false)
+            && t.checkExpect(cycle.reroot(loop, 0, 1), false)
+            && t.checkExpect(cycle.tree, false);
+  }
+
+  // test LightEmAll.step(): to move the powerStation with the same power a new flood gives
+  boolean testStepReroot(Tester t) {
+    LightEmAll game = new LightEmAll(9, 7, "KRUSKAL", false, 3L, true);
+    String[] keys = { "right", "down", "down", "left", "up", "right", "right", "down" };
+    for (int i = 0; i < keys.length; i++) {
+      game.onKeyEvent(keys[i]);
+    }
+    boolean shifted = game.power.current;
+    PowerEngine fresh = new PowerEngine(9, 7);
+    fresh.flood(game.conn, game.store.station, game.radius);
+    boolean same = true;
+    for (int cell = 0; cell < 63; cell++) {
+      same = same && game.nodes.get(cell).distFromPower() == fresh.distOf(cell)
+              && game.nodes.get(cell).isPowered() == fresh.isPowered(cell);
+    }
+    return t.checkExpect(shifted, true)
+            && t.checkExpect(same, true)
+            && t.checkExpect(game.powered.size(), fresh.powered.size())
+            && t.checkExpect(game.store.station == 0, false);
+  }
+
+  // test DistanceOracle.dist(): to measure paths along trees of wires through their common
+  // ancestor, searching components with loops and leaving others apart
+  boolean testDistanceOracle(Tester t) {
+    // a 40 x 1 line, long enough for the sparse table, with a 2 x 2 loop beside it
+    int[] line = new int[40];
+    for (int cell = 0; cell < 40; cell++) {
+      line[cell] = GamePiece.TOP | GamePiece.BOTTOM;
+    }
+    line[0] = GamePiece.BOTTOM;
+    line[39] = GamePiece.TOP;
+    DistanceOracle oracle = new DistanceOracle(1, 40);
+    oracle.build(line, 7);
+    int[] loop = new int[6];
+    loop[0] = GamePiece.RIGHT | GamePiece.BOTTOM;
+    loop[1] = GamePiece.RIGHT | GamePiece.TOP;
+    loop[2] = GamePiece.LEFT | GamePiece.BOTTOM;
+    loop[3] = GamePiece.LEFT | GamePiece.TOP;
+    DistanceOracle loops = new DistanceOracle(3, 2);
+    loops.build(loop, 1);
+    return t.checkExpect(oracle.version, 7)
+            && t.checkExpect(oracle.length, 79)
+            && t.checkExpect(oracle.table.length, 3)
+            && t.checkExpect(oracle.dist(line, 3, 37), 34)
+            && t.checkExpect(oracle.dist(line, 37, 3), 34)
+            && t.checkExpect(oracle.dist(line, 20, 20), 0)
+            && t.checkExpect(loops.tree[0], false)
+            && t.checkExpect(loops.dist(loop, 0, 3), 2)
+            && t.checkExpect(loops.dist(loop, 0, 4), Integer.MAX_VALUE)
+            && t.checkExpect(loops.tree[4], true);
+  }
+
+  // test LightEmAll.distanceBetween(): to rebuild the oracle only after connections change
+  boolean testDistanceBetween(Tester t) {
+    LightEmAll game = new LightEmAll(8, 8, "KRUSKAL", false, 2L, false);
+    PowerEngine fresh = new PowerEngine(8, 8);
+    fresh.flood(game.conn, 0, 0);
+    int far = game.distanceBetween(0, 63);
+    DistanceOracle built = game.oracle;
+    int[][] table = built.table;
+    game.distanceFromStation(7, 7);
+    boolean kept = game.oracle.table == table;
+    game.onMouseClicked(new Posn(100, 100), "LeftButton");
+    int after = game.distanceBetween(0, 63);
+    PowerEngine turned = new PowerEngine(8, 8);
+    turned.flood(game.conn, 0, 0);
+    return t.checkExpect(far, fresh.distOf(63))
+            && t.checkExpect(kept, true)
+            && t.checkExpect(game.oracle.table == table, false)
+            && t.checkExpect(after, turned.distOf(63))
+            && t.checkExpect(game.distanceFromStation(0, 0), 0);
+  }
+
+  // test DiameterTracker.rebuild(): to find the longest path of a tree exactly, and the depth
+  // of a double search on a loop, as findRadius() does
+  boolean testDiameterTracker(Tester t) {
+    int[] line = new int[6];
+    for (int cell = 0; cell < 6; cell++) {
+      line[cell] = GamePiece.TOP | GamePiece.BOTTOM;
+    }
+    line[0] = GamePiece.BOTTOM;
+    line[5] = GamePiece.TOP;
+    DiameterTracker tracker = new DiameterTracker(1, 6);
+    tracker.rebuild(line, 2, 3);
+    int[] loop = new int[4];
+    loop[0] = GamePiece.RIGHT | GamePiece.BOTTOM;
+    loop[1] = GamePiece.RIGHT | GamePiece.TOP;
+    loop[2] = GamePiece.LEFT | GamePiece.BOTTOM;
+    loop[3] = GamePiece.LEFT | GamePiece.TOP;
+    DiameterTracker loops = new DiameterTracker(2, 2);
+    loops.rebuild(loop, 0, 1);
+    return t.checkExpect(tracker.version, 3)
+            && t.checkExpect(tracker.tree, true)
+            && t.checkExpect(tracker.from, 5)
+            && t.checkExpect(tracker.to, 0)
+            && t.checkExpect(tracker.length, 5)
+            && t.checkExpect(tracker.fromDist[1], 4)
+            && t.checkExpect(tracker.toDist[1], 1)
+            && t.checkExpect(tracker.radius(), 3)
+            && t.checkExpect(loops.tree, false)
+            && t.checkExpect(loops.size, 4)
+            && t.checkExpect(loops.length, 2)
+            && t.checkExpect(loops.radius(), 2);
+  }
+
+  // test LightEmAll.turn(): to keep radius at the longest path through the powered wires when
+  // liveRadius is set, and at the one found first otherwise
+  boolean testLiveRadius(Tester t) {
+    LightEmAll game = new LightEmAll(8, 8, "KRUSKAL", false, 2L, false);
+    LightEmAll fixed = new LightEmAll(8, 8, "KRUSKAL", false, 2L, false);
+    int start = game.radius;
+    game.liveRadius = true;
+    game.onMouseClicked(new Posn(140, 180), "LeftButton");
+    fixed.onMouseClicked(new Posn(140, 180), "LeftButton");
+    DiameterEngine sweep = new DiameterEngine(8, 8);
+    sweep.farthestFrom(game.conn, sweep.farthestFrom(game.conn, game.store.station));
+    PowerEngine fresh = new PowerEngine(8, 8);
+    fresh.flood(game.conn, game.store.station, sweep.depth / 2 + 1);
+    int cut = game.radius;
+    int powered = game.powered.size();
+    game.onMouseClicked(new Posn(140, 180), "LeftButton");
+    game.onMouseClicked(new Posn(140, 180), "LeftButton");
+    game.onMouseClicked(new Posn(140, 180), "LeftButton");
+    return t.checkExpect(start, 10)
+            && t.checkExpect(cut, 8)
+            && t.checkExpect(cut, sweep.depth / 2 + 1)
+            && t.checkExpect(powered, fresh.powered.size())
+            && t.checkExpect(fixed.radius, start)
+            && t.checkExpect(game.radius, start);
+  }
+
+  // test LightEmAll.onTick(): to search for the longest path after a click within the ticks
+  // when liveRadius and powerBudget are both set, ending where a game without a budget ends
+  boolean testLiveRadiusBudget(Tester t) {
+    LightEmAll game = new LightEmAll(8, 8, "KRUSKAL", false, 2L, false);
+    int start = game.radius;
+    game.liveRadius = true;
+    game.powerBudget = 1;
+    game.onMouseClicked(new Posn(140, 180), "LeftButton");
+    int clicked = game.radius;
+    int begun = game.live.step;
+    int known = game.live.version;
+    int ticks = 0;
+    while (game.live.step > 0 || !game.power.settled()) {
+      game.onTick();
+      ticks = ticks + 1;
+    }
+    DiameterEngine sweep = new DiameterEngine(8, 8);
+    sweep.farthestFrom(game.conn, sweep.farthestFrom(game.conn, game.store.station));
+    PowerEngine fresh = new PowerEngine(8, 8);
+    fresh.flood(game.conn, game.store.station, sweep.depth / 2 + 1);
+    return t.checkExpect(clicked, start)
+            && t.checkExpect(begun, 1)
+            && t.checkExpect(known, -1)
+            && t.checkExpect(ticks > 0, true)
+            && t.checkExpect(game.live.rebuilds, 1)
+            && t.checkExpect(game.live.version, game.store.version)
+            && t.checkExpect(game.radius, 8)
+            && t.checkExpect(game.powered.size(), fresh.powered.size());
+  }
+
+  // test DiameterTracker.resume(): to carry a begun rebuild on however late it is, ending with
+  // the longest path rebuild() finds at once
+  boolean testDiameterTrackerResume(Tester t) {
+    LightEmAll game = new LightEmAll(48, 48, "KRUSKAL", false, 2L, false);
+    DiameterTracker whole = new DiameterTracker(48, 48);
+    whole.rebuild(game.conn, 0, 7);
+    DiameterTracker sliced = new DiameterTracker(48, 48);
+    sliced.begin(0, 7);
+    int calls = 1;
+    while (!sliced.resume(game.conn, 0)) {
+      calls = calls + 1;
+    }
+    return t.checkExpect(calls > 3, true)
+            && t.checkExpect(sliced.version, 7)
+            && t.checkExpect(sliced.step, 0)
+            && t.checkExpect(sliced.from, whole.from)
+            && t.checkExpect(sliced.to, whole.to)
+            && t.checkExpect(sliced.length, whole.length)
+            && t.checkExpect(sliced.tree, whole.tree)
+            && t.checkExpect(sliced.radius(), whole.radius());
+  }
+
+  // test PowerEngine.resume():to carry a begun flood on a slice at a time, leaving the cells
+  // of the flood before to be dimmed, and end with the distances of a single flood
+  boolean testPowerEngineResume(Tester t) {
+    LightEmAll game = new LightEmAll(48, 48, "KRUSKAL", false, 2L, false);
+    PowerEngine whole = new PowerEngine(48, 48);
+    whole.flood(game.conn, 0, game.radius);
+    PowerEngine sliced = new PowerEngine(48, 48);
+    sliced.flood(game.conn, 0, game.radius);
+    sliced.begin(0, game.radius);
+    boolean begun = sliced.reached.size() == 1 && sliced.fading.size() == 48 * 48;
+    boolean first = sliced.resume(game.conn, 0);
+    int partial = sliced.reached.size();
+    // every slice visits SLICE of the 48 * 48 cells, however late it is
+    int slices = 1;
+    while (!sliced.resume(game.conn, 0)) {
+      slices = slices + 1;
+    }
+    boolean same = true;
+    for (int cell = 0; cell < 48 * 48; cell++) {
+      same = same && sliced.distOf(cell) == whole.distOf(cell)
+              && sliced.isPowered(cell) == whole.isPowered(cell);
+    }
+    return t.checkExpect(begun, true)
+            && t.checkExpect(first, false)
+            && t.checkExpect(partial > PowerEngine.SLICE, true)
+            && t.checkExpect(partial < 48 * 48, true)
+            && t.checkExpect(slices, 2)
+            && t.checkExpect(sliced.flooding, false)
+            && t.checkExpect(sliced.settled(), false)
+            && t.checkExpect(same, true);
+  }
+
+  // test LightEmAll.onTick(): to spread the power of a click over ticks when powerBudget is
+  // set, ending where a game without one ends at once
+  boolean testPowerBudget(Tester t) {
+    LightEmAll game = new LightEmAll(48, 48, "KRUSKAL", false, 2L, false);
+    LightEmAll whole = new LightEmAll(48, 48, "KRUSKAL", false, 2L, false);
+    game.powerBudget = 1;
+    game.onMouseClicked(new Posn(100, 100), "LeftButton");
+    whole.onMouseClicked(new Posn(100, 100), "LeftButton");
+    int begun = game.powered.size();
+    int ticks = 0;
+    while (!game.power.settled()) {
+      game.onTick();
+      ticks = ticks + 1;
+    }
+    boolean same = true;
+    for (int cell = 0; cell < 48 * 48; cell++) {
+      same = same && game.power.distOf(cell) == whole.power.distOf(cell);
+    }
+    return t.checkExpect(begun, 1)
+            && t.checkExpect(ticks > 1, true)
+            && t.checkExpect(game.powered.size(), whole.powered.size())
+            && t.checkExpect(same, true);
+  }
+
+  // test BoardStore.neighbor(): to find neighbors arithmetically, without leaving the board
+  boolean testBoardStoreNeighbor(Tester t) {
+    BoardStore bs = new BoardStore(3, 2);
+    return t.checkExpect(bs.neighbor(0, GamePiece.TOP), -1)
+            && t.checkExpect(bs.neighbor(0, GamePiece.BOTTOM), 1)
+            && t.checkExpect(bs.neighbor(1, GamePiece.BOTTOM), -1)
+            && t.checkExpect(bs.neighbor(0, GamePiece.LEFT), -1)
+            && t.checkExpect(bs.neighbor(3, GamePiece.LEFT), 1)
+            && t.checkExpect(bs.neighbor(3, GamePiece.RIGHT), 5)
+            && t.checkExpect(bs.neighbor(5, GamePiece.RIGHT), -1);
+  }
+
+  // test BoardStore.wiredMask(): to match GamePiece.wiredMask() on every cell
+  boolean testBoardStoreWiredMask(Tester t) {
+    this.initLightEmAll();
+    BoardStore bs = new BoardStore(2, 2);
+    bs.wire(0, 0, GamePiece.RIGHT);
+    bs.wire(1, 0, GamePiece.LEFT);
+    bs.wire(1, 0, GamePiece.BOTTOM);
+    bs.wire(0, 1, GamePiece.TOP);
+    boolean same = true;
+    for (int i = 0; i < this.leaM2.nodes.size(); i++) {
+      same = same && this.leaM2.store.wiredMask(i) == this.leaM2.nodes.get(i).wiredMask();
+    }
+    return t.checkExpect(same, true)
+            && t.checkExpect(bs.wiredMask(0), GamePiece.RIGHT)
+            && t.checkExpect(bs.wiredMask(2), GamePiece.LEFT)
+            && t.checkExpect(bs.wiredMask(1), 0);
+  }
+
+  // test BoardStore.rotate(): to rotate wires like GamePiece.rotate()
+  boolean testBoardStoreRotate(Tester t) {
+    BoardStore bs = new BoardStore(1, 2);
+    bs.wire(0, 0, GamePiece.TOP);
+    bs.wire(0, 0, GamePiece.RIGHT);
+    bs.rotate(0, "LeftButton");
+    int left = bs.wires[0];
+    bs.rotate(0, "RightButton");
+    bs.rotate(0, "RightButton");
+    return t.checkExpect(left, GamePiece.TOP | GamePiece.LEFT)
+            && t.checkExpect((int) bs.wires[0], GamePiece.RIGHT | GamePiece.BOTTOM)
+            && t.checkExpect((int) bs.wires[1], 0);
+  }
+
+  // test BoardStore.turnAll(): to turn every cell like rotating it one at a time
+  boolean testBoardStoreTurnAll(Tester t) {
+    Random rand = new Random(5);
+    BoardStore bulk = new BoardStore(9, 3);
+    BoardStore single = new BoardStore(9, 3);
+    byte[] turns = new byte[27];
+    for (int i = 0; i < 27; i++) {
+      bulk.wires[i] = (byte) rand.nextInt(16);
+      single.wires[i] = bulk.wires[i];
+      turns[i] = (byte) rand.nextInt(4);
+      for (int j = 0; j < turns[i]; j++) {
+        single.rotate(i, "LeftButton");
+      }
+    }
+    bulk.turnAll(turns);
+    return t.checkExpect(Arrays.equals(bulk.wires, single.wires), true);
+  }
+
+  // test BoardStore.rotateAll(): to rotate every cell once in either direction
+  boolean testBoardStoreRotateAll(Tester t) {
+    BoardStore bs = new BoardStore(3, 3);
+    for (int i = 0; i < 9; i++) {
+      bs.wires[i] = (byte) (GamePiece.TOP | GamePiece.RIGHT);
+    }
+    bs.rotateAll("LeftButton");
+    boolean left = bs.wires[0] == (GamePiece.TOP | GamePiece.LEFT)
+            && bs.wires[8] == (GamePiece.TOP | GamePiece.LEFT);
+    bs.rotateAll("RightButton");
+    bs.rotateAll("RightButton");
+    return t.checkExpect(left, true)
+            && t.checkExpect((int) bs.wires[4], GamePiece.RIGHT | GamePiece.BOTTOM)
+            && t.checkExpect((int) bs.wires[8], GamePiece.RIGHT | GamePiece.BOTTOM);
+  }
+
+  // test BoardStore.scramble(): to draw the same turns as rotating each GamePiece
+  boolean testBoardStoreScramble(Tester t) {
+    LightEmAll game = new LightEmAll(5, 4, "KRUSKAL", false, new Random(6));
+    BoardStore bulk = new BoardStore(5, 4);
+    bulk.wires = Arrays.copyOf(game.store.wires, 20);
+    bulk.scramble(new Random(9));
+    Random rand = new Random(9);
+    boolean same = true;
+    for (int i = 0; i < 20; i++) {
+      GamePiece gp = game.nodes.get(i);
+      int turns = rand.nextInt(4);
+      for (int j = 0; j < turns; j++) {
+        gp.rotate("LeftButton");
+      }
+      same = same && gp.wireMask() == bulk.wires[i];
+    }
+    return t.checkExpect(same, true);
+  }
+
+  // test GamePiece as a view: to read and write its cell of store in place
+  boolean testGamePieceView(Tester t) {
+    LightEmAll game = new LightEmAll(5, 5, "KRUSKAL", true, new Random(4));
+    game.onMouseClicked(new Posn(60, 20), "LeftButton");
+    game.onKeyEvent("down");
+    boolean same = true;
+    for (int i = 0; i < game.nodes.size(); i++) {
+      GamePiece gp = game.nodes.get(i);
+      same = same && gp.wireMask() == game.store.wires[i]
+              && gp.connectionMask() == game.conn[i]
+              && gp.powerStation() == (i == game.store.station)
+              && gp.distFromPower() == game.power.distOf(i);
+    }
+    GamePiece gp = game.board.get(1).get(2);
+    int old = game.store.wires[7];
+    gp.rotate("RightButton");
+    return t.checkExpect(same, true)
+            && t.checkExpect((int) game.store.wires[7], ((old << 1) | (old >> 3)) & 15)
+            && t.checkExpect(game.conn[7], game.store.wiredMask(7))
+            && t.checkExpect(gp.equals(new GamePiece(1, 2, game.store)), true)
+            && t.checkExpect(gp.equals(new GamePiece(1, 2)), false);
+  }
+
+  // test GamePiece.setWireMask() and setConnectionMask(): to unpack masks into a GamePiece
+  boolean testSetMasks(Tester t) {
+    GamePiece gp = new GamePiece(0, 0);
+    gp.setWireMask(GamePiece.TOP | GamePiece.LEFT);
+    gp.setConnectionMask(GamePiece.RIGHT);
+    return t.checkExpect(gp.wireTop() && gp.wireLeft() && !gp.wireRight() && !gp.wireBot(), true)
+            && t.checkExpect(gp.rig() && !gp.top() && !gp.bot() && !gp.lef(), true)
+            && t.checkExpect(gp.wireMask(), GamePiece.TOP | GamePiece.LEFT);
+  }
+
+  // test LightEmAll without GamePiece views: to play from primitive arrays alone
+  boolean testWithoutViews(Tester t) {
+    LightEmAll full = new LightEmAll(6, 5, "KRUSKAL", true, new Random(2));
+    LightEmAll bare = new LightEmAll(6, 5, "KRUSKAL", true, new Random(2), false);
+    full.onMouseClicked(new Posn(100, 20), "RightButton");
+    bare.onMouseClicked(new Posn(100, 20), "RightButton");
+    full.onKeyEvent("right");
+    bare.onKeyEvent("right");
+    bare.makeScene();
+    return t.checkExpect(bare.nodes.size(), 0)
+            && t.checkExpect(bare.board.size(), 0)
+            && t.checkExpect(java.util.Arrays.equals(bare.conn, full.conn), true)
+            && t.checkExpect(bare.powered.size(), full.powered.size())
+            && t.checkExpect(bare.radius, full.radius)
+            && t.checkExpect(bare.frame.painted, 30);
+  }
+
+  // test BoardStore.connectAll(): to find the same connections and ends as refreshAll(),
+  // eight cells at a time, on boards whose columns are shorter, as long as and longer than
+  // a step
+  boolean testBoardStoreConnectAll(Tester t) {
+    Random rand = new Random(5);
+    boolean same = true;
+    int[] heights = { 1, 3, 7, 8, 9, 17 };
+    for (int h = 0; h < heights.length; h++) {
+      BoardStore each = new BoardStore(11, heights[h]);
+      BoardStore all = new BoardStore(11, heights[h]);
+      for (int i = 0; i < each.cells; i++) {
+        each.wires[i] = (byte) rand.nextInt(16);
+        all.wires[i] = each.wires[i];
+      }
+      each.refreshAll();
+      all.connectAll();
+      same = same && Arrays.equals(all.conn, each.conn) && all.ends == each.ends;
+    }
+    BoardStore counted = new BoardStore(2, 2);
+    counted.connectAll();
+    return t.checkExpect(same, true)
+            && t.checkExpect(counted.version, 1);
+  }
+
+  // test BitBoard.connect(): to find the same connections as BoardStore, 64 cells at a time
+  boolean testBitBoardConnect(Tester t) {
+    Random rand = new Random(3);
+    BoardStore bs = new BoardStore(70, 3);
+    for (int i = 0; i < bs.cells; i++) {
+      bs.wires[i] = (byte) rand.nextInt(16);
+    }
+    bs.refreshAll();
+    BitBoard bb = new BitBoard(70, 3);
+    int[] links = new int[bs.cells];
+    bb.load(bs.wires);
+    bb.connect();
+    bb.unloadLinks(links);
+    return t.checkExpect(Arrays.equals(links, bs.conn), true)
+            && t.checkExpect(bb.stride, 2);
+  }
+
+  // test PowerEngine.floodBits(): to flood level by level with the same results as flood()
+  boolean testPowerEngineFloodBits(Tester t) {
+    LightEmAll game = new LightEmAll(70, 6, "KRUSKAL", true, new Random(8));
+    game.onMouseClicked(new Posn(100, 60), "LeftButton");
+    int station = game.store.station;
+    game.bits.load(game.store.wires);
+    game.bits.connect();
+    PowerEngine queued = new PowerEngine(70, 6);
+    queued.flood(game.conn, station, game.radius);
+    PowerEngine levels = new PowerEngine(70, 6);
+    levels.floodBits(game.bits, station, game.radius, Integer.MAX_VALUE);
+    PowerEngine near = new PowerEngine(70, 6);
+    near.floodBits(game.bits, station, game.radius, 3);
+    boolean same = true;
+    boolean limited = true;
+    for (int i = 0; i < 420; i++) {
+      same = same && queued.distOf(i) == levels.distOf(i)
+              && queued.isPowered(i) == levels.isPowered(i);
+      limited = limited && (queued.distOf(i) <= 3) == near.reached.contains(i);
+    }
+    return t.checkExpect(same, true)
+            && t.checkExpect(limited, true)
+            && t.checkExpect(levels.reached.size(), queued.reached.size())
+            && t.checkExpect(levels.parent[station], -1);
+  }
+
+  // test LightEmAll.bitFlood: to play the same game flooding over connection planes
+  boolean testBitFlood(Tester t) {
+    LightEmAll queued = new LightEmAll(9, 9, "FRACTALS", false, new Random(1));
+    LightEmAll levels = new LightEmAll(9, 9, "FRACTALS", false, new Random(1));
+    levels.bitFlood = true;
+    queued.onMouseClicked(new Posn(20, 60), "LeftButton");
+    levels.onMouseClicked(new Posn(20, 60), "LeftButton");
+    queued.onKeyEvent("down");
+    levels.onKeyEvent("down");
+    levels.powerDown();
+    levels.powerUp();
+    boolean same = true;
+    for (int i = 0; i < 81; i++) {
+      same = same && queued.nodes.get(i).distFromPower() == levels.nodes.get(i).distFromPower()
+              && queued.nodes.get(i).isPowered() == levels.nodes.get(i).isPowered();
+    }
+    return t.checkExpect(same, true)
+            && t.checkExpect(levels.store.station, queued.store.station);
+  }
+
+  // test IndexSet: to add, remove and find cell indices
+  boolean testIndexSet(Tester t) {
+    IndexSet is = new IndexSet(8);
+    is.add(5);
+    is.add(2);
+    is.add(7);
+    is.add(2);
+    is.remove(5);
+    boolean afterRemove = is.size() == 2 && !is.contains(5) && is.contains(7) && is.contains(2);
+    is.clear();
+    return t.checkExpect(afterRemove, true)
+            && t.checkExpect(is.size(), 0)
+            && t.checkExpect(is.contains(7), false);
+  }
+
+  // test IntHeap: to pop values in order of their keys
+  boolean testIntHeap(Tester t) {
+    IntHeap heap = new IntHeap(1);
+    heap.push(5, 50);
+    heap.push(1, 10);
+    heap.push(3, 30);
+    heap.push(1, 11);
+    int first = heap.minKey();
+    heap.pop();
+    int second = heap.minKey();
+    heap.pop();
+    int third = heap.minValue();
+    heap.pop();
+    return t.checkExpect(first, 1)
+            && t.checkExpect(second, 1)
+            && t.checkExpect(third, 30)
+            && t.checkExpect(heap.size, 1)
+            && t.checkExpect(heap.minKey(), 5);
+  }
+
+  // test IndexList.add(): to grow a list of indices
+  boolean testIndexList(Tester t) {
+    IndexList il = new IndexList(1);
+    il.add(4);
+    il.add(7);
+    il.add(9);
+    boolean full = il.size() == 3 && il.get(2) == 9;
+    il.clear();
+    return t.checkExpect(full, true)
+            && t.checkExpect(il.size(), 0)
+            && t.checkExpect(il.items.length, 4);
+  }
+
+  // test IndexList.pop(): to take indices off the end of a list
+  boolean testIndexListPop(Tester t) {
+    IndexList il = new IndexList(2);
+    il.add(4);
+    il.add(7);
+    int last = il.pop();
+    int first = il.pop();
+    return t.checkExpect(last, 7)
+            && t.checkExpect(first, 4)
+            && t.checkExpect(il.size(), 0);
+  }
+
+  // test LongSet.add(): to remember each key once, growing past its first capacity
+  boolean testLongSet(Tester t) {
+    LongSet ls = new LongSet(2);
+    boolean added = true;
+    for (long k = 0; k < 100; k++) {
+      added = ls.add(k << 32 | k) && added;
+    }
+    return t.checkExpect(added, true)
+            && t.checkExpect(ls.add(5L << 32 | 5L), false)
+            && t.checkExpect(ls.size, 100)
+            && t.checkExpect(ls.contains(99L << 32 | 99L), true)
+            && t.checkExpect(ls.contains(99L), false);
+  }
+
+  // test LightEmAll.fractalWires(): to skip empty rectangles and to draw boards too large
+  // for a recursive walk
+  boolean testFractalWiresIterative(Tester t) {
+    LightEmAll odd = new LightEmAll(21, 9, "FRACTALS");
+    LightEmAll big = new LightEmAll(600, 600, "FRACTALS", false, new Random(1), false);
+    int unwired = 0;
+    for (int i = 0; i < big.store.cells; i++) {
+      if (big.store.wires[i] == 0) {
+        unwired = unwired + 1;
+      }
+    }
+    return t.checkExpect(odd.store.wires[9 * 9 + 1], (byte) (GamePiece.TOP | GamePiece.RIGHT))
+            && t.checkExpect(unwired, 0);
+  }
+
   // test GamePiece.powerDown(): to turn the power off in a GamePiece
   boolean testPowerDownHelper(Tester t) {
     this.initLightEmAll();
@@ -1458,14 +6271,14 @@ class ExamplesLightEmAll {
             && t.checkExpect(this.leaF1.powered.size() == 0, true)
             && t.checkExpect(this.leaK2.powered.size() == 0, true)
             && t.checkExpect(this.leaK5.powered.size() == 0, true)
-            && t.checkExpect(this.gp1.isPowered, false)
-            && t.checkExpect(this.gp2.isPowered, false)
-            && t.checkExpect(this.gp3.isPowered, false)
-            && t.checkExpect(this.gp4.isPowered, false)
-            && t.checkExpect(this.gp5.isPowered, false)
-            && t.checkExpect(this.gp6.isPowered, false)
-            && t.checkExpect(this.gp7.isPowered, false)
-            && t.checkExpect(this.gp8.isPowered, false);
+            && t.checkExpect(this.gp1.isPowered(), false)
+            && t.checkExpect(this.gp2.isPowered(), false)
+            && t.checkExpect(this.gp3.isPowered(), false)
+            && t.checkExpect(this.gp4.isPowered(), false)
+            && t.checkExpect(this.gp5.isPowered(), false)
+            && t.checkExpect(this.gp6.isPowered(), false)
+            && t.checkExpect(this.gp7.isPowered(), false)
+            && t.checkExpect(this.gp8.isPowered(), false);
   }
 
   // BEGIN tests for Utils.java
@@ -1485,6 +6298,124 @@ class ExamplesLightEmAll {
             && t.checkExpect(new HeavierThan().compare(edge2, edge3), 0);
   }
 
+  // test KruskalEngine.genEdges(): to generate packed Edges in a stable sweep order
+  boolean testKruskalEngineGenEdges(Tester t) {
+    KruskalEngine ke = new KruskalEngine(3, 2);
+    ke.genEdges(new Random(3));
+    Random same = new Random(3);
+    return t.checkExpect(ke.count, 7)
+            && t.checkExpect(ke.edges[0], 0)
+            && t.checkExpect(ke.edges[1], 1)
+            && t.checkExpect(ke.edges[2], 2)
+            && t.checkExpect(ke.edges[6], 9)
+            && t.checkExpect(ke.weights[0], same.nextInt(6))
+            && t.checkExpect(ke.toCell(ke.edges[0]), 2)
+            && t.checkExpect(ke.toCell(ke.edges[1]), 1)
+            && t.checkExpect(ke.isRight(ke.edges[6]), false);
+  }
+
+  // test KruskalEngine.sortEdges(): to order Edges by weight, keeping ties in order
+  boolean testKruskalEngineSortEdges(Tester t) {
+    KruskalEngine ke = new KruskalEngine(2, 2);
+    ke.add(0, 3);
+    ke.add(1, 0);
+    ke.add(2, 3);
+    ke.add(5, 1);
+    ke.sortEdges();
+    return t.checkExpect(ke.sorted[0], 1)
+            && t.checkExpect(ke.sorted[1], 5)
+            && t.checkExpect(ke.sorted[2], 0)
+            && t.checkExpect(ke.sorted[3], 2);
+  }
+
+  // test KruskalEngine.run(): to build a spanning tree without cycles
+  boolean testKruskalEngineRun(Tester t) {
+    KruskalEngine ke = new KruskalEngine(6, 5);
+    ke.genEdges(new Random(7));
+    ke.sortEdges();
+    ke.run();
+    return t.checkExpect(ke.treeSize, 29)
+            && t.checkExpect(ke.sets.count, 1);
+  }
+
+  // test BoruvkaEngine.run(): to build the unique tree of the weights on any number of threads
+  boolean testBoruvkaEngine(Tester t) {
+    ForkJoinPool one = new ForkJoinPool(1);
+    ForkJoinPool four = new ForkJoinPool(4);
+    BoruvkaEngine single = new BoruvkaEngine(20, 9, 42);
+    single.run(one);
+    BoruvkaEngine many = new BoruvkaEngine(20, 9, 42);
+    many.run(four);
+    one.shutdown();
+    four.shutdown();
+    // the same tree, by Kruskal's algorithm over the same (weight, edge) order
+    ArrayList<Long> keys = new ArrayList<>();
+    for (int edge = 0; edge < 360; edge++) {
+      if (single.exists(edge)) {
+        keys.add(((long) single.weights[edge] << 32) | edge);
+      }
+    }
+    keys.sort(null);
+    DisjointSet sets = new DisjointSet(180);
+    byte[] kruskal = new byte[360];
+    for (int i = 0; i < keys.size(); i++) {
+      int edge = (int) (long) keys.get(i);
+      int step = 9;
+      if ((edge & 1) == 1) {
+        step = 1;
+      }
+      if (sets.union(edge >> 1, (edge >> 1) + step)) {
+        kruskal[edge] = 1;
+      }
+    }
+    return t.checkExpect(single.joined.get(), 179)
+            && t.checkExpect(Arrays.equals(single.chosen, many.chosen), true)
+            && t.checkExpect(Arrays.equals(single.chosen, kruskal), true)
+            && t.checkExpect(single.exists(19 * 9 * 2), false)
+            && t.checkExpect(single.exists(8 * 2 + 1), false);
+  }
+
+  // test LightEmAll.boruvkaWires(): to wire a spanning tree that powers the whole board
+  boolean testBoruvkaWires(Tester t) {
+    LightEmAll game = new LightEmAll(12, 10, "BORUVKA", false, new Random(3));
+    LightEmAll again = new LightEmAll(12, 10, "BORUVKA", false, new Random(3));
+    int links = 0;
+    for (int i = 0; i < 120; i++) {
+      links = links + Integer.bitCount(game.conn[i]);
+    }
+    return t.checkExpect(links, 2 * 119)
+            && t.checkExpect(game.power.reached.size(), 120)
+            && t.checkExpect(Arrays.equals(game.store.wires, again.store.wires), true);
+  }
+
+  // test DisjointSet.find(): to find the representative of a cell
+  boolean testDisjointSetFind(Tester t) {
+    DisjointSet ds = new DisjointSet(6);
+    ds.parent[1] = 0;
+    ds.parent[2] = 1;
+    ds.parent[3] = 2;
+    return t.checkExpect(ds.find(3), 0)
+            && t.checkExpect(ds.parent[3], 1)
+            && t.checkExpect(ds.find(4), 4)
+            && t.checkExpect(ds.connected(2, 3), true)
+            && t.checkExpect(ds.connected(3, 5), false);
+  }
+
+  // test DisjointSet.union(): to merge two sets of cells
+  boolean testDisjointSetUnion(Tester t) {
+    DisjointSet ds = new DisjointSet(5);
+    boolean first = ds.union(0, 1);
+    boolean second = ds.union(2, 1);
+    boolean repeated = ds.union(0, 2);
+    return t.checkExpect(first, true)
+            && t.checkExpect(second, true)
+            && t.checkExpect(repeated, false)
+            && t.checkExpect(ds.count, 3)
+            && t.checkExpect(ds.size[ds.find(2)], 3)
+            && t.checkExpect(ds.connected(0, 2), true)
+            && t.checkExpect(ds.connected(0, 4), false);
+  }
+
   // test Utils.mergeSort(): to sort an ArrayList based on a comparator
   boolean testMergeSort(Tester t) {
     // TODO: Find an effective way to compare pre-sorted ArrayList to merge-sorted ArrayList
@@ -0,0 +1,837 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javalib.worldimages.Posn;
+
+// to run the LightEmAll benchmarks from the command line. Every benchmark is measured on
+// every requested board size and game mode, printing one tab-separated row per trial:
+//   benchmark  mode  width  height  iterations  ops/s  ns/op  bytes/op
+// Options (all optional):
+//   --sizes 8,64,256,1000,2000      square board sizes, or WxH pairs like 200x100
+//   --modes MANUAL,FRACTALS,KRUSKAL game modes, also BORUVKA, WILSON and PRIM
+//   --bench kruskalWires,makeScene  benchmarks to run, by name
+//   --warmup 500 --time 1000        milliseconds spent warming up and measuring each trial
+//   --seed 1                        seed for every Random used by the benchmarks
+// Boards of 1000x1000 and above need a large heap, e.g. java -Xmx8g
+class LightEmAllBench {
+  public static void main(String[] args) {
+    BenchRunner runner = new BenchRunner();
+    for (int i = 0; i + 1 < args.length; i = i + 2) {
+      runner.option(args[i], args[i + 1]);
+    }
+    runner.runAll();
+  }
+}
+
+// to measure a list of benchmarks over board sizes and game modes
+class BenchRunner {
+  // the benchmarks to run
+  ArrayList<IBenchmark> benchmarks;
+  // the board dimensions to run them on, as {width, height} pairs
+  ArrayList<int[]> sizes;
+  // the game modes to run them in
+  ArrayList<String> modes;
+  // milliseconds spent warming up and measuring each trial
+  long warmupMillis;
+  long measureMillis;
+  // seed for every Random used by the benchmarks
+  long seed;
+  // bytes allocated by reading the allocation counter itself, subtracted from every run
+  long counterBytes;
+
+  // Constructor for a BenchRunner with every benchmark, size and mode selected
+  BenchRunner() {
+    this.benchmarks = new ArrayList<>();
+    this.benchmarks.add(new GenBoardBench());
+    this.benchmarks.add(new KruskalWiresBench());
+    this.benchmarks.add(new BoruvkaWiresBench());
+    this.benchmarks.add(new BoruvkaThreadsBench(1));
+    this.benchmarks.add(new BoruvkaThreadsBench(2));
+    this.benchmarks.add(new BoruvkaThreadsBench(4));
+    this.benchmarks.add(new BoruvkaThreadsBench(8));
+    this.benchmarks.add(new WilsonWiresBench());
+    this.benchmarks.add(new PrimWiresBench());
+    this.benchmarks.add(new FractalWiresBench());
+    this.benchmarks.add(new TurnAllBench());
+    this.benchmarks.add(new ConnectAllBench());
+    this.benchmarks.add(new FindRadiusBench());
+    this.benchmarks.add(new DistanceQueryBench());
+    this.benchmarks.add(new LoadSnapshotBench());
+    this.benchmarks.add(new PoolTakeBench());
+    this.benchmarks.add(new PowerUpBench());
+    this.benchmarks.add(new PowerUpBitsBench());
+    this.benchmarks.add(new MouseClickedBench());
+    this.benchmarks.add(new LiveRadiusBench());
+    this.benchmarks.add(new SlicedClickBench());
+    this.benchmarks.add(new KeyEventBench());
+    this.benchmarks.add(new ReplayBench());
+    this.benchmarks.add(new BatchedClicksBench());
+    this.benchmarks.add(new MakeSceneBench());
+    this.sizes = new ArrayList<>();
+    this.option("--sizes", "8,64,256,1000,2000");
+    this.modes = new ArrayList<>();
+    this.option("--modes", "MANUAL,FRACTALS,KRUSKAL");
+    this.warmupMillis = 500;
+    this.measureMillis = 1000;
+    this.seed = 1;
+    this.counterBytes = this.allocatedBytes();
+    this.counterBytes = this.allocatedBytes() - this.counterBytes;
+  }
+
+  // EFFECT: applies the given command line option
+  void option(String name, String value) {
+    if (name.equals("--sizes")) {
+      this.sizes = new ArrayList<>();
+      for (String size : value.split(",")) {
+        String[] dims = size.split("x");
+        int width = Integer.parseInt(dims[0]);
+        int height = Integer.parseInt(dims[dims.length - 1]);
+        this.sizes.add(new int[] { width, height });
+      }
+    }
+    else if (name.equals("--modes")) {
+      this.modes = new ArrayList<>();
+      for (String mode : value.split(",")) {
+        this.modes.add(mode);
+      }
+    }
+    else if (name.equals("--bench")) {
+      ArrayList<IBenchmark> chosen = new ArrayList<>();
+      for (String bench : value.split(",")) {
+        for (IBenchmark b : this.benchmarks) {
+          if (b.name().equals(bench)) {
+            chosen.add(b);
+          }
+        }
+      }
+      this.benchmarks = chosen;
+    }
+    else if (name.equals("--warmup")) {
+      this.warmupMillis = Long.parseLong(value);
+    }
+    else if (name.equals("--time")) {
+      this.measureMillis = Long.parseLong(value);
+    }
+    else if (name.equals("--seed")) {
+      this.seed = Long.parseLong(value);
+    }
+    else {
+      throw new IllegalArgumentException("Unknown option: " + name);
+    }
+  }
+
+  // EFFECT: runs every benchmark on every size and mode it applies to, printing the results
+  void runAll() {
+    System.out.println("benchmark\tmode\twidth\theight\titerations\tops/s\tns/op\tbytes/op");
+    for (IBenchmark b : this.benchmarks) {
+      for (int[] size : this.sizes) {
+        for (String mode : this.modes) {
+          if (b.supports(mode)) {
+            this.trial(b, size[0], size[1], mode);
+          }
+        }
+      }
+    }
+  }
+
+  // EFFECT: warms up and measures one benchmark on one board, printing its row
+  void trial(IBenchmark b, int width, int height, String mode) {
+    b.setup(width, height, mode, new Random(this.seed));
+    this.measure(b, this.warmupMillis);
+    long[] totals = this.measure(b, this.measureMillis);
+    long iterations = totals[0];
+    double nsPerOp = (double) totals[1] / iterations;
+    System.out.printf("%s\t%s\t%d\t%d\t%d\t%.1f\t%.1f\t%d%n", b.name(), mode, width, height,
+            iterations, 1e9 / nsPerOp, nsPerOp, totals[2] / iterations);
+  }
+
+  // to return {iterations, nanoseconds, bytes allocated} spent running the given benchmark
+  // for at least one iteration and about the given number of milliseconds. Only run() is
+  // timed; prepare() happens outside the measurement
+  long[] measure(IBenchmark b, long millis) {
+    long deadline = System.nanoTime() + millis * 1000000L;
+    long iterations = 0;
+    long nanos = 0;
+    long bytes = 0;
+    do {
+      b.prepare();
+      long allocatedBefore = this.allocatedBytes();
+      long start = System.nanoTime();
+      b.run();
+      long end = System.nanoTime();
+      bytes = bytes + this.allocatedBytes() - allocatedBefore - this.counterBytes;
+      nanos = nanos + end - start;
+      iterations = iterations + 1;
+    } while (System.nanoTime() < deadline);
+    return new long[] { iterations, nanos, bytes };
+  }
+
+  // to return the bytes allocated so far by this thread, or 0 where the JVM cannot tell
+  long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+              .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
+
+// to represent one measured operation on a LightEmAll board
+interface IBenchmark {
+  // to return the name this benchmark is selected and reported by
+  String name();
+
+  // does this benchmark apply to the given game mode?
+  boolean supports(String mode);
+
+  // EFFECT: builds the board this benchmark runs on
+  void setup(int width, int height, String mode, Random rand);
+
+  // EFFECT: gets the board ready for the next run, outside of the measurement
+  void prepare();
+
+  // EFFECT: performs the measured operation once
+  void run();
+}
+
+// to measure genBoard(), which makes a GamePiece view of every cell
+class GenBoardBench implements IBenchmark {
+  LightEmAll game;
+
+  public String name() {
+    return "genBoard";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("MANUAL");
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, "EMPTY", false, rand);
+  }
+
+  public void prepare() {
+    this.game.board = new ArrayList<>();
+    this.game.nodes = new ArrayList<>();
+  }
+
+  public void run() {
+    this.game.genBoard();
+  }
+}
+
+// to measure kruskalWires() on a board without wires
+class KruskalWiresBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+
+  public String name() {
+    return "kruskalWires";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("KRUSKAL");
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, "EMPTY", false, rand);
+    this.game.mode = mode;
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    new BenchBoards().clearWires(this.game);
+    this.game.rand = new Random(this.rand.nextLong());
+  }
+
+  public void run() {
+    this.game.kruskalWires();
+  }
+}
+
+// to measure boruvkaWires() on a board without wires
+class BoruvkaWiresBench extends KruskalWiresBench {
+  public String name() {
+    return "boruvkaWires";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("BORUVKA");
+  }
+
+  public void run() {
+    this.game.boruvkaWires();
+  }
+}
+
+// to measure boruvkaWires() on a ForkJoinPool of the given number of threads, to see how it
+// scales with cores
+class BoruvkaThreadsBench extends KruskalWiresBench {
+  int threads;
+  // the pool of the current board, made outside the measurement
+  ForkJoinPool pool;
+
+  // Constructor for a BoruvkaThreadsBench on pools of the given number of threads
+  BoruvkaThreadsBench(int threads) {
+    this.threads = threads;
+  }
+
+  public String name() {
+    return "boruvkaThreads" + this.threads;
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("BORUVKA");
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    super.setup(width, height, mode, rand);
+    if (this.pool != null) {
+      this.pool.shutdown();
+    }
+    this.pool = new ForkJoinPool(this.threads);
+  }
+
+  public void run() {
+    this.game.boruvkaWires(this.pool);
+  }
+}
+
+// to measure wilsonWires() on a board without wires
+class WilsonWiresBench extends KruskalWiresBench {
+  public String name() {
+    return "wilsonWires";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("WILSON");
+  }
+
+  public void run() {
+    this.game.wilsonWires();
+  }
+}
+
+// to measure primWires() on a board without wires
+class PrimWiresBench extends KruskalWiresBench {
+  public String name() {
+    return "primWires";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("PRIM");
+  }
+
+  public void run() {
+    this.game.primWires();
+  }
+}
+
+// to measure fractalWires() on a board without wires
+class FractalWiresBench implements IBenchmark {
+  LightEmAll game;
+
+  public String name() {
+    return "fractalWires";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("FRACTALS");
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, "EMPTY", false, rand);
+    this.game.mode = mode;
+  }
+
+  public void prepare() {
+    new BenchBoards().clearWires(this.game);
+  }
+
+  public void run() {
+    this.game.fractalWires(0, this.game.width - 1, 0, this.game.height - 1);
+  }
+}
+
+// to measure turning every cell of a board by its own random count
+class TurnAllBench implements IBenchmark {
+  BoardStore store;
+  byte[] turns;
+
+  public String name() {
+    return "turnAll";
+  }
+
+  public boolean supports(String mode) {
+    return mode.equals("KRUSKAL");
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.store = new LightEmAll(width, height, mode, false, rand, false).store;
+    this.turns = new byte[this.store.cells];
+    for (int i = 0; i < this.turns.length; i++) {
+      this.turns[i] = (byte) rand.nextInt(4);
+    }
+  }
+
+  public void prepare() {
+    // every run turns the wires left by the last one
+  }
+
+  public void run() {
+    this.store.turnAll(this.turns);
+  }
+}
+
+// to measure refreshing the connections of a whole generated board, without GamePieces
+class ConnectAllBench implements IBenchmark {
+  LightEmAll game;
+
+  public String name() {
+    return "connectAll";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand, false);
+  }
+
+  public void prepare() {
+    // connectAll() leaves the board as it found it
+  }
+
+  public void run() {
+    this.game.connectAll();
+  }
+}
+
+// to measure findRadius() on a generated board
+class FindRadiusBench implements IBenchmark {
+  LightEmAll game;
+
+  public String name() {
+    return "findRadius";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand);
+  }
+
+  public void prepare() {
+    // findRadius() leaves the board as it found it
+  }
+
+  public void run() {
+    this.game.findRadius();
+  }
+}
+
+// to measure the distance between two random GamePieces of a generated board, once its
+// DistanceOracle is built
+class DistanceQueryBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+  int a;
+  int b;
+
+  public String name() {
+    return "distanceQuery";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand, false);
+    this.rand = rand;
+    this.game.distanceBetween(0, 0);
+  }
+
+  public void prepare() {
+    this.a = this.rand.nextInt(this.game.store.cells);
+    this.b = this.rand.nextInt(this.game.store.cells);
+  }
+
+  public void run() {
+    this.game.distanceBetween(this.a, this.b);
+  }
+}
+
+// to measure resuming a saved board, without GamePiece views, from its snapshot file
+class LoadSnapshotBench implements IBenchmark {
+  Path path;
+
+  public String name() {
+    return "loadSnapshot";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    try {
+      this.path = Files.createTempFile("bench", ".lea");
+      this.path.toFile().deleteOnExit();
+      new LightEmAll(width, height, mode, true, rand, false).save(this.path);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public void prepare() {
+    // loading leaves the snapshot file as it found it
+  }
+
+  public void run() {
+    try {
+      new LightEmAll(new BoardSnapshot(this.path), false);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
+
+// to measure starting a game out of a PuzzlePool that generated it ahead of time
+class PoolTakeBench implements IBenchmark {
+  PuzzlePool pool;
+  int width;
+  int height;
+  String mode;
+  long seed;
+
+  public String name() {
+    return "poolTake";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    if (this.pool != null) {
+      this.pool.shutdown();
+    }
+    this.pool = new PuzzlePool(1, Long.MAX_VALUE, true, false);
+    this.width = width;
+    this.height = height;
+    this.mode = mode;
+    this.seed = rand.nextLong();
+  }
+
+  public void prepare() {
+    this.seed = this.seed + 1;
+    this.pool.prefetch(this.width, this.height, this.mode, this.seed);
+    while (!this.pool.isReady(this.width, this.height, this.mode, this.seed)) {
+      Thread.yield();
+    }
+  }
+
+  public void run() {
+    this.pool.take(this.width, this.height, this.mode, this.seed);
+  }
+}
+
+// to measure a full powerDown() and powerUp() of a generated board
+class PowerUpBench implements IBenchmark {
+  LightEmAll game;
+
+  public String name() {
+    return "powerUp";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand);
+  }
+
+  public void prepare() {
+    // every run powers the same board down and up again
+  }
+
+  public void run() {
+    this.game.powerDown();
+    this.game.powerUp();
+  }
+}
+
+// to measure a full powerDown() and powerUp() flooding over the connection planes
+class PowerUpBitsBench extends PowerUpBench {
+  public String name() {
+    return "powerUpBits";
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    super.setup(width, height, mode, rand);
+    this.game.bitFlood = true;
+  }
+}
+
+// to measure a click that rotates a random GamePiece
+class MouseClickedBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+  Posn next;
+  String button;
+
+  public String name() {
+    return "onMouseClicked";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, true, rand);
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    this.next = new BenchBoards().randomClick(this.game, this.rand);
+    this.button = "LeftButton";
+    if (this.rand.nextBoolean()) {
+      this.button = "RightButton";
+    }
+  }
+
+  public void run() {
+    this.game.onMouseClicked(this.next, this.button);
+  }
+}
+
+// to measure turning a random GamePiece of a generated board all the way around, one click
+// at a time, while radius follows the longest path through the powered wires. The board is
+// left as it was, so every run cuts and links the same tree
+class LiveRadiusBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+  Posn next;
+
+  public String name() {
+    return "liveRadius";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand, false);
+    this.game.liveRadius = true;
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    this.next = new BenchBoards().randomClick(this.game, this.rand);
+  }
+
+  public void run() {
+    for (int i = 0; i < 4; i++) {
+      this.game.onMouseClicked(this.next, "LeftButton");
+    }
+  }
+}
+
+// to measure a random click on a fully powered board with a powerBudget of 4 ms, which
+// only begins the flood that later ticks carry on
+class SlicedClickBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+  Posn next;
+
+  public String name() {
+    return "slicedClick";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand, false);
+    this.game.powerBudget = 4000000;
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    while (!this.game.power.settled()) {
+      this.game.onTick();
+    }
+    this.next = new BenchBoards().randomClick(this.game, this.rand);
+  }
+
+  public void run() {
+    this.game.onMouseClicked(this.next, "LeftButton");
+  }
+}
+
+// to measure a key press that moves the powerStation in a random direction
+class KeyEventBench implements IBenchmark {
+  static final String[] KEYS = { "up", "down", "left", "right" };
+  LightEmAll game;
+  Random rand;
+  String key;
+
+  public String name() {
+    return "onKeyEvent";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, false, rand);
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    this.key = KEYS[this.rand.nextInt(KEYS.length)];
+  }
+
+  public void run() {
+    this.game.onKeyEvent(this.key);
+  }
+}
+
+// to measure replaying a log of 10000 random rotations and powerStation moves
+class ReplayBench implements IBenchmark {
+  static final int MOVES = 10000;
+  LightEmAll game;
+  MoveLog log;
+  int width;
+  int height;
+  String mode;
+  long seed;
+
+  public String name() {
+    return "replay";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.width = width;
+    this.height = height;
+    this.mode = mode;
+    this.seed = rand.nextLong();
+    LightEmAll played = new LightEmAll(width, height, mode, true, this.seed, false);
+    BenchBoards boards = new BenchBoards();
+    for (int i = 0; i < MOVES; i++) {
+      if (i % 4 == 0) {
+        played.onKeyEvent(KeyEventBench.KEYS[rand.nextInt(KeyEventBench.KEYS.length)]);
+      }
+      else {
+        played.onMouseClicked(boards.randomClick(played, rand), "LeftButton");
+      }
+    }
+    this.log = played.moves;
+  }
+
+  public void prepare() {
+    this.game = new LightEmAll(this.width, this.height, this.mode, true, this.seed, false);
+  }
+
+  public void run() {
+    this.game.replay(this.log);
+  }
+}
+
+// to measure a burst of 100 random clicks queued in a batching game, then the tick that
+// makes them
+class BatchedClicksBench implements IBenchmark {
+  static final int CLICKS = 100;
+  LightEmAll game;
+  Random rand;
+
+  public String name() {
+    return "batchedClicks";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, true, rand, false);
+    this.game.batchInput = true;
+    this.rand = rand;
+  }
+
+  public void prepare() {
+    // the tick leaves nothing queued
+  }
+
+  public void run() {
+    BenchBoards boards = new BenchBoards();
+    for (int i = 0; i < CLICKS; i++) {
+      this.game.onMouseClicked(boards.randomClick(this.game, this.rand), "LeftButton");
+    }
+    this.game.onTick();
+  }
+}
+
+// to measure drawing a frame after a random click
+class MakeSceneBench implements IBenchmark {
+  LightEmAll game;
+  Random rand;
+
+  public String name() {
+    return "makeScene";
+  }
+
+  public boolean supports(String mode) {
+    return true;
+  }
+
+  public void setup(int width, int height, String mode, Random rand) {
+    this.game = new LightEmAll(width, height, mode, true, rand);
+    this.rand = rand;
+    this.game.makeScene();
+  }
+
+  public void prepare() {
+    this.game.onMouseClicked(new BenchBoards().randomClick(this.game, this.rand), "LeftButton");
+  }
+
+  public void run() {
+    this.game.makeScene();
+  }
+}
+
+// helpers shared by the benchmarks
+class BenchBoards {
+  // EFFECT: removes every wire of the given game
+  void clearWires(LightEmAll game) {
+    for (int i = 0; i < game.store.cells; i++) {
+      game.store.wires[i] = 0;
+    }
+  }
+
+  // to return the position of a click on a random GamePiece of the given game
+  Posn randomClick(LightEmAll game, Random rand) {
+    return new Posn(rand.nextInt(game.width) * game.pieceSize + game.pieceSize / 2,
+            rand.nextInt(game.height) * game.pieceSize + game.pieceSize / 2);
+  }
+}